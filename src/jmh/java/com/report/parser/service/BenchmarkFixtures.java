@@ -0,0 +1,154 @@
+package com.report.parser.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.report.parser.config.ReportProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MyProfile.docx, Payload.json and profile.png scaled up to the row and image counts a benchmark asks for.
+ */
+final class BenchmarkFixtures {
+
+    final ObjectMapper objectMapper = new ObjectMapper();
+    final ReportProperties reportProperties = new ReportProperties();
+    final RenderMetrics renderMetrics = new RenderMetrics(new SimpleMeterRegistry(), reportProperties);
+    final FontRegistry fontRegistry = new FontRegistry(reportProperties);
+    final DirectPdfRenderer directPdfRenderer = new DirectPdfRenderer(reportProperties);
+    final TemplateCompiler templateCompiler = new TemplateCompiler(renderMetrics, fontRegistry, directPdfRenderer);
+    final ImageCache imageCache = new ImageCache(reportProperties);
+    final ParallelPdfRenderer parallelPdfRenderer = new ParallelPdfRenderer(reportProperties, fontRegistry);
+    final RenderMemory renderMemory = new RenderMemory(reportProperties);
+    final DocumentCache documentCache = new DocumentCache(reportProperties, renderMemory);
+    final ReportGenerationService reportGenerationService = new ReportGenerationService(imageCache,
+            renderMetrics, fontRegistry, parallelPdfRenderer, directPdfRenderer, renderMemory, documentCache, reportProperties);
+    final ParserService parserService = new ParserService(objectMapper, reportGenerationService,
+            new BatchReportService(reportGenerationService, reportProperties),
+            new TemplateRegistry(reportProperties, templateCompiler, objectMapper), new PayloadReader(objectMapper));
+
+    final byte[] templateSource;
+    final byte[] photo;
+    final Map<String, Object> payload;
+
+    BenchmarkFixtures() throws IOException {
+        templateSource = read("report-templates/MyProfile.docx");
+        photo = read("report-templates/profile.png");
+        try (InputStream inputStream = new ClassPathResource("Payload.json").getInputStream()) {
+            payload = objectMapper.readValue(inputStream, new TypeReference<Map<String, Object>>() {
+            });
+        }
+    }
+
+    /**
+     * The profile template with one extra image placeholder per image beyond the profile photo.
+     */
+    CompiledTemplate compile(int images) throws Exception {
+        return templateCompiler.compile("MyProfile.docx with " + images + " images", withImages(images), false);
+    }
+
+    /**
+     * The profile template registered with its table columns and images, as requests get it from the registry.
+     *
+     * @param directRender whether its reports are written by the direct renderer
+     */
+    ReportTemplate template(int images, boolean directRender) throws Exception {
+        String id = "MyProfile.docx with " + images + " images";
+        CompiledTemplate compiledTemplate = templateCompiler.compile(id, withImages(images), directRender);
+        Map<String, ByteBuffer> imageMap = new LinkedHashMap<>();
+        imageMap.put("profilePhoto", ByteBuffer.wrap(photo).asReadOnlyBuffer());
+        for (int i = 1; i < images; i++) {
+            imageMap.put("photo" + i, ByteBuffer.wrap(photo).asReadOnlyBuffer());
+        }
+        return new ReportTemplate(id, compiledTemplate.getChecksum(), compiledTemplate, columnMap(), imageMap, Instant.now());
+    }
+
+    private byte[] withImages(int images) throws Exception {
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.load(new ByteArrayInputStream(templateSource));
+        for (int i = 1; i < images; i++) {
+            wordMLPackage.getMainDocumentPart().addParagraphOfText("${photo" + i + "}");
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        wordMLPackage.save(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * A fresh request payload with the payload fields and the given number of generated table rows.
+     */
+    Map<String, Object> payload(int rows) {
+        Map<String, Object> requestPayload = new HashMap<>(payload);
+        requestPayload.put("tableData", rows(rows));
+        return requestPayload;
+    }
+
+    Map<String, String> textPlaceholders() {
+        Map<String, String> textPlaceholderMap = new HashMap<>();
+        payload.forEach((key, value) -> {
+            if (value instanceof String text) {
+                textPlaceholderMap.put(key, text);
+            }
+        });
+        return textPlaceholderMap;
+    }
+
+    Map<String, Resource> imagePlaceholders(int images) {
+        Map<String, Resource> imagePlaceholderMap = new HashMap<>();
+        imagePlaceholderMap.put("profilePhoto", new ByteArrayResource(photo));
+        for (int i = 1; i < images; i++) {
+            imagePlaceholderMap.put("photo" + i, new ByteArrayResource(photo));
+        }
+        return imagePlaceholderMap;
+    }
+
+    static List<Map<String, Object>> rows(int count) {
+        List<Map<String, Object>> rows = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("slNo", String.valueOf(i));
+            row.put("name", "Contact " + i);
+            row.put("relationship", i % 2 == 0 ? "Colleague" : "Friend");
+            row.put("mobile", String.format("98%08d", i));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    static LinkedHashMap<String, String> columnMap() {
+        LinkedHashMap<String, String> columnMap = new LinkedHashMap<>();
+        columnMap.put("slNo", "S/N");
+        columnMap.put("name", "Name");
+        columnMap.put("relationship", "Relationship");
+        columnMap.put("mobile", "Mobile");
+        return columnMap;
+    }
+
+    /**
+     * A new stream for every export, the renderers close the one they write to.
+     */
+    static OutputStream discard() {
+        return OutputStream.nullOutputStream();
+    }
+
+    private static byte[] read(String path) throws IOException {
+        try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.report.parser.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole report from the registered template to PDF bytes, as one request renders it. Every report has the
+ * same fields, so after the first one they are prepared on the kept document, as repeated requests are.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+    @Param({"10", "1000", "50000"})
+    public int rows;
+
+    @Param({"1", "5"})
+    public int images;
+
+    @Param({"fo", "direct"})
+    public String renderer;
+
+    private BenchmarkFixtures fixtures;
+    private ReportTemplate template;
+
+    @Setup
+    public void setUp() throws Exception {
+        fixtures = new BenchmarkFixtures();
+        template = fixtures.template(images, renderer.equals("direct"));
+    }
+
+    @Benchmark
+    public void render() throws Exception {
+        PreparedReport report = fixtures.parserService.prepareReport(template, fixtures.payload(rows));
+        fixtures.reportGenerationService.writePdf(report, BenchmarkFixtures.discard());
+    }
+}
@@ -0,0 +1,73 @@
+package com.report.parser.service;
+
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.Resource;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text and image replacement on a fresh copy of the compiled template.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FillStageBenchmark {
+    @Param({"1", "5"})
+    public int images;
+
+    private BenchmarkFixtures fixtures;
+    private CompiledTemplate compiledTemplate;
+    private Map<String, String> textPlaceholders;
+
+    @Setup
+    public void setUp() throws Exception {
+        fixtures = new BenchmarkFixtures();
+        compiledTemplate = fixtures.compile(images);
+        textPlaceholders = fixtures.textPlaceholders();
+    }
+
+    @State(Scope.Thread)
+    public static class Document {
+        WordprocessingMLPackage wordMLPackage;
+        Map<String, Resource> imagePlaceholders;
+
+        @Setup(Level.Invocation)
+        public void setUp(FillStageBenchmark benchmark) throws Exception {
+            wordMLPackage = benchmark.compiledTemplate.newDocument();
+            // resources are single use, like the ones a request brings
+            imagePlaceholders = benchmark.fixtures.imagePlaceholders(benchmark.images);
+        }
+    }
+
+    @Benchmark
+    public WordprocessingMLPackage fillText(Document document) {
+        compiledTemplate.getTemplateIndex().fillText(document.wordMLPackage, textPlaceholders);
+        return document.wordMLPackage;
+    }
+
+    /**
+     * Image replacement with a warm image cache, as for a photo that is shared between reports.
+     */
+    @Benchmark
+    public WordprocessingMLPackage replaceImages(Document document) {
+        fixtures.reportGenerationService.replaceImagePlaceholders(compiledTemplate.getTemplateIndex(),
+                document.imagePlaceholders, document.wordMLPackage, new RenderTrace(compiledTemplate.getName()));
+        return document.wordMLPackage;
+    }
+}
@@ -0,0 +1,81 @@
+package com.report.parser.service;
+
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Table rows and the PDF export, the stages that grow with the payload.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TableStageBenchmark {
+    @Param({"10", "1000", "50000"})
+    public int rows;
+
+    private BenchmarkFixtures fixtures;
+    private ReportTemplate template;
+    private CompiledTemplate compiledTemplate;
+    private List<Map<String, Object>> tableData;
+    private final LinkedHashMap<String, String> columnMap = BenchmarkFixtures.columnMap();
+
+    @Setup
+    public void setUp() throws Exception {
+        fixtures = new BenchmarkFixtures();
+        template = fixtures.template(1, false);
+        compiledTemplate = template.getCompiledTemplate();
+        tableData = BenchmarkFixtures.rows(rows);
+    }
+
+    @State(Scope.Thread)
+    public static class Document {
+        WordprocessingMLPackage wordMLPackage;
+
+        @Setup(Level.Invocation)
+        public void setUp(TableStageBenchmark benchmark) throws Exception {
+            wordMLPackage = benchmark.compiledTemplate.newDocument();
+            benchmark.fixtures.fontRegistry.applyTo(wordMLPackage);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Report {
+        PreparedReport report;
+
+        @Setup(Level.Invocation)
+        public void setUp(TableStageBenchmark benchmark) throws Exception {
+            report = benchmark.fixtures.parserService.prepareReport(benchmark.template, benchmark.fixtures.payload(benchmark.rows));
+        }
+    }
+
+    @Benchmark
+    public WordprocessingMLPackage addTable(Document document) {
+        ReportGenerationService.addTableToDocument(document.wordMLPackage, compiledTemplate.getTemplateIndex(),
+                tableData.iterator(), columnMap);
+        return document.wordMLPackage;
+    }
+
+    @Benchmark
+    public void writePdf(Report report) throws Exception {
+        fixtures.reportGenerationService.writePdf(report.report, BenchmarkFixtures.discard());
+    }
+}
@@ -0,0 +1,93 @@
+package com.report.parser.service;
+
+import org.docx4j.model.datastorage.migration.VariablePrepare;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Template stages, which run once per template when it is compiled, apart from taking the per request copy.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TemplateStageBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Template {
+        BenchmarkFixtures fixtures;
+        CompiledTemplate compiledTemplate;
+        // loaded and run through VariablePrepare, but not yet indexed or alignment fixed
+        byte[] preparedSource;
+
+        @Setup
+        public void setUp() throws Exception {
+            fixtures = new BenchmarkFixtures();
+            compiledTemplate = fixtures.compile(1);
+            WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.load(new ByteArrayInputStream(fixtures.templateSource));
+            VariablePrepare.prepare(wordMLPackage);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            wordMLPackage.save(outputStream);
+            preparedSource = outputStream.toByteArray();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LoadedTemplate {
+        WordprocessingMLPackage wordMLPackage;
+
+        @Setup(Level.Invocation)
+        public void setUp(Template template) throws Exception {
+            wordMLPackage = WordprocessingMLPackage.load(new ByteArrayInputStream(template.fixtures.templateSource));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PreparedTemplate {
+        WordprocessingMLPackage wordMLPackage;
+
+        @Setup(Level.Invocation)
+        public void setUp(Template template) throws Exception {
+            wordMLPackage = WordprocessingMLPackage.load(new ByteArrayInputStream(template.preparedSource));
+        }
+    }
+
+    @Benchmark
+    public WordprocessingMLPackage load(Template template) throws Exception {
+        return WordprocessingMLPackage.load(new ByteArrayInputStream(template.fixtures.templateSource));
+    }
+
+    @Benchmark
+    public WordprocessingMLPackage variablePrepare(LoadedTemplate loadedTemplate) throws Exception {
+        VariablePrepare.prepare(loadedTemplate.wordMLPackage);
+        return loadedTemplate.wordMLPackage;
+    }
+
+    /**
+     * Placeholder, image anchor and table indexing together with the text alignment fixes.
+     */
+    @Benchmark
+    public TemplateIndex indexAndAlign(PreparedTemplate preparedTemplate) {
+        return TemplateIndex.build(preparedTemplate.wordMLPackage);
+    }
+
+    @Benchmark
+    public WordprocessingMLPackage newDocument(Template template) throws Exception {
+        return template.compiledTemplate.newDocument();
+    }
+}
@@ -0,0 +1,187 @@
+package com.report.parser;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the report endpoints of the running application with many clients at once and fails when a
+ * response isn't a PDF with the expected pages, or when latency regresses past the baseline. Reports are
+ * built from Payload.json with its table rows repeated up to the row counts asked for. Rendered reports
+ * aren't cached, so every request renders. The expected page counts are those of the bundled MyProfile
+ * template; a merged batch has those of its first row count once per report.
+ * <p>
+ * {@code mvn -Pload-test test}, tuned with system properties, e.g. {@code -Dload.concurrency=8
+ * -Dload.rows=10,400 -Dload.pages=get=2,10=2,400=8}; {@code -Dload.updateBaseline=true} records the run
+ * as the new baseline. The results are written to target/load-test/results.json.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "report.pdf-cache.enabled=false")
+class GenerateLoadTest {
+    private static final Path RESULTS = Path.of("target", "load-test", "results.json");
+
+    private final int concurrency = Integer.getInteger("load.concurrency", 4);
+    private final int requests = Integer.getInteger("load.requests", 40);
+    private final int warmup = Integer.getInteger("load.warmup", 4);
+    private final int[] rowCounts = Arrays.stream(System.getProperty("load.rows", "10,200,1000").split(","))
+            .map(String::trim).mapToInt(Integer::parseInt).toArray();
+    private final int batchSize = Integer.getInteger("load.batchSize", 5);
+    private final Map<String, Integer> expectedPages = expectedPages(System.getProperty("load.pages", "get=2,10=2,200=5,1000=18"));
+    private final String template = System.getProperty("load.template", "");
+    private final double tolerance = Double.parseDouble(System.getProperty("load.tolerance", "0.25"));
+    private final double slackMillis = Double.parseDouble(System.getProperty("load.slackMillis", "50"));
+    private final Path baselineFile = Path.of(System.getProperty("load.baseline", "src/load/resources/load-baseline.properties"));
+    private final boolean updateBaseline = Boolean.getBoolean("load.updateBaseline");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void generateKeepsItsLatencyUnderConcurrentLoad() throws Exception {
+        // the baseline is kept per concurrency, latency depends on it
+        String suffix = "-c" + concurrency;
+        List<LoadRun> runs = new ArrayList<>();
+        runs.add(new LoadRun("get" + suffix, 0, pages("get"), () -> send(HttpRequest.newBuilder(uri("/generate")).GET())));
+        for (int rows : rowCounts) {
+            byte[] payload = objectMapper.writeValueAsBytes(payload(rows));
+            int pages = pages(String.valueOf(rows));
+            runs.add(new LoadRun("post-" + rows + "rows" + suffix, payload.length, pages, () -> send(post(uri("/generate"), payload))));
+            runs.add(new LoadRun("job-" + rows + "rows" + suffix, payload.length, pages, () -> runJob(payload)));
+        }
+        byte[] batch = objectMapper.writeValueAsBytes(Collections.nCopies(batchSize, payload(rowCounts[0])));
+        runs.add(new LoadRun("batch-" + batchSize + "x" + rowCounts[0] + "rows" + suffix, batch.length,
+                batchSize * pages(String.valueOf(rowCounts[0])), () -> send(post(uri("/generate/batch", "merged=true"), batch))));
+
+        List<LoadRun.Result> results = new ArrayList<>();
+        for (LoadRun run : runs) {
+            LoadRun.Result result = run.run(concurrency, requests, warmup);
+            System.out.printf("%-28s c=%d p50=%6.0fms p95=%6.0fms p99=%6.0fms %6.1f req/s pages=%d heap peak=%dMB gc=%d/%dms errors=%d%n",
+                    result.scenario(), concurrency, result.p50Millis(), result.p95Millis(), result.p99Millis(),
+                    result.requestsPerSecond(), result.pages(), result.heapPeakBytes() / (1024 * 1024),
+                    result.gcCount(), result.gcMillis(), result.errors());
+            results.add(result);
+        }
+        Files.createDirectories(RESULTS.getParent());
+        objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(RESULTS.toFile(), results);
+
+        for (LoadRun.Result result : results) {
+            assertEquals(0, result.errors(), result.scenario() + ": " + result.failures());
+        }
+        LatencyBaseline baseline = LatencyBaseline.load(baselineFile);
+        if (updateBaseline) {
+            LatencyBaseline.write(baselineFile, results);
+            return;
+        }
+        if (!baseline.missing(results).isEmpty()) {
+            System.out.println("No baseline yet for " + baseline.missing(results));
+        }
+        List<String> regressions = baseline.regressions(results, tolerance, slackMillis);
+        assertTrue(regressions.isEmpty(), "Latency regressed: " + regressions);
+    }
+
+    private int pages(String key) {
+        Integer pages = expectedPages.get(key);
+        if (pages == null) {
+            throw new IllegalArgumentException("No expected page count for " + key + ", set it with -Dload.pages=" + key + "=<pages>");
+        }
+        return pages;
+    }
+
+    /**
+     * Pages per scenario as {@code key=pages} pairs, keyed by {@code get} or by a row count.
+     */
+    private static Map<String, Integer> expectedPages(String pairs) {
+        Map<String, Integer> pages = new HashMap<>();
+        for (String pair : pairs.split(",")) {
+            String[] keyAndPages = pair.split("=", 2);
+            pages.put(keyAndPages[0].trim(), Integer.parseInt(keyAndPages[1].trim()));
+        }
+        return pages;
+    }
+
+    /**
+     * Payload.json with its table rows repeated up to the given count, numbered through.
+     */
+    private Map<String, Object> payload(int rows) throws Exception {
+        Map<String, Object> payload;
+        try (InputStream inputStream = new ClassPathResource("Payload.json").getInputStream()) {
+            payload = objectMapper.readValue(inputStream, new TypeReference<>() {
+            });
+        }
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> sample = (List<Map<String, Object>>) payload.get("tableData");
+        List<Map<String, Object>> tableData = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new HashMap<>(sample.get(i % sample.size()));
+            row.put("slNo", String.valueOf(i + 1));
+            tableData.add(row);
+        }
+        payload.put("tableData", tableData);
+        return payload;
+    }
+
+    /**
+     * Submits the report as a job, polls until it is done and fetches the result.
+     */
+    private byte[] runJob(byte[] payload) throws Exception {
+        HttpResponse<byte[]> submitted = client.send(post(uri("/jobs"), payload).build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (submitted.statusCode() != 202) {
+            throw new IllegalStateException("HTTP " + submitted.statusCode() + " on submit");
+        }
+        String id = (String) objectMapper.readValue(submitted.body(), Map.class).get("id");
+        while (true) {
+            Map<?, ?> status = objectMapper.readValue(send(HttpRequest.newBuilder(uri("/jobs/" + id)).GET()), Map.class);
+            if (!"QUEUED".equals(status.get("state")) && !"RUNNING".equals(status.get("state"))) {
+                return send(HttpRequest.newBuilder(uri("/jobs/" + id + "/result")).GET());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private byte[] send(HttpRequest.Builder request) throws Exception {
+        HttpResponse<byte[]> response = client.send(request.timeout(Duration.ofMinutes(5)).build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + " from " + response.uri().getPath());
+        }
+        return response.body();
+    }
+
+    private static HttpRequest.Builder post(URI uri, byte[] body) {
+        return HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+    }
+
+    private URI uri(String path) {
+        return uri(path, null);
+    }
+
+    private URI uri(String path, String query) {
+        String parameters = template.isEmpty() ? query : "template=" + template + (query != null ? "&" + query : "");
+        return URI.create("http://localhost:" + port + path + (parameters != null ? "?" + parameters : ""));
+    }
+}
@@ -0,0 +1,80 @@
+package com.report.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The p50 and p95 latency each scenario is expected to stay under, as {@code <scenario>.p50} and
+ * {@code <scenario>.p95} in milliseconds. A scenario may be slower by the tolerance, a fraction of its
+ * baseline, plus a fixed slack that keeps fast scenarios from failing on noise. p99 is reported but not
+ * checked, a run is too short for it to be stable.
+ */
+final class LatencyBaseline {
+    private final Properties values = new Properties();
+
+    static LatencyBaseline load(Path file) throws IOException {
+        LatencyBaseline baseline = new LatencyBaseline();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                baseline.values.load(reader);
+            }
+        }
+        return baseline;
+    }
+
+    /**
+     * @return a description of every regression, empty if there is none
+     */
+    List<String> regressions(List<LoadRun.Result> results, double tolerance, double slackMillis) {
+        List<String> regressions = new ArrayList<>();
+        for (LoadRun.Result result : results) {
+            check(result.scenario() + ".p50", result.p50Millis(), tolerance, slackMillis, regressions);
+            check(result.scenario() + ".p95", result.p95Millis(), tolerance, slackMillis, regressions);
+        }
+        return regressions;
+    }
+
+    List<String> missing(List<LoadRun.Result> results) {
+        return results.stream().map(LoadRun.Result::scenario)
+                .filter(scenario -> !values.containsKey(scenario + ".p50"))
+                .toList();
+    }
+
+    private void check(String key, double measured, double tolerance, double slackMillis, List<String> regressions) {
+        String expected = values.getProperty(key);
+        if (expected == null) {
+            return;
+        }
+        double limit = Double.parseDouble(expected) * (1 + tolerance) + slackMillis;
+        if (measured > limit) {
+            regressions.add(String.format("%s is %.0fms, the baseline is %sms and the limit %.0fms", key, measured, expected, limit));
+        }
+    }
+
+    /**
+     * Replaces the baseline with the results, keeping the entries of scenarios that didn't run.
+     */
+    static void write(Path file, List<LoadRun.Result> results) throws IOException {
+        LatencyBaseline baseline = load(file);
+        TreeMap<String, String> values = new TreeMap<>();
+        baseline.values.forEach((key, value) -> values.put((String) key, (String) value));
+        for (LoadRun.Result result : results) {
+            values.put(result.scenario() + ".p50", String.format("%.0f", result.p50Millis()));
+            values.put(result.scenario() + ".p95", String.format("%.0f", result.p95Millis()));
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            writer.write("# p50 and p95 latency in milliseconds, written by mvn -Pload-test test -Dload.updateBaseline=true\n");
+            for (var entry : values.entrySet()) {
+                writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.report.parser;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One scenario driven at a fixed concurrency: every worker sends the next request as soon as its last
+ * one is answered, until the request count is reached. Heap and GC figures are for the whole JVM, the
+ * application and the load it is under run in the same process.
+ */
+final class LoadRun {
+    private final String name;
+    private final Call call;
+    private final long payloadBytes;
+    private final int expectedPages;
+
+    LoadRun(String name, long payloadBytes, int expectedPages, Call call) {
+        this.name = name;
+        this.payloadBytes = payloadBytes;
+        this.expectedPages = expectedPages;
+        this.call = call;
+    }
+
+    Result run(int concurrency, int requests, int warmup) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            int pages = pages(call.send());
+            if (pages != expectedPages) {
+                throw new IllegalStateException(name + " warmup has " + pages + " pages instead of " + expectedPages);
+            }
+        }
+
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long[] gcBefore = gcTotals();
+
+        long[] latencies = new long[requests];
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService workers = Executors.newFixedThreadPool(concurrency)) {
+            List<Future<?>> running = new ArrayList<>();
+            for (int worker = 0; worker < concurrency; worker++) {
+                running.add(workers.submit(() -> {
+                    for (int index = next.getAndIncrement(); index < requests; index = next.getAndIncrement()) {
+                        long sent = System.nanoTime();
+                        try {
+                            byte[] pdf = call.send();
+                            latencies[index] = System.nanoTime() - sent;
+                            int pages = pages(pdf);
+                            if (pages != expectedPages) {
+                                failures.add("request " + index + " has " + pages + " pages instead of " + expectedPages);
+                            }
+                        } catch (Exception e) {
+                            latencies[index] = System.nanoTime() - sent;
+                            failures.add("request " + index + " failed: " + e.getMessage());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : running) {
+                worker.get();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] gcAfter = gcTotals();
+        long heapPeak = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        Arrays.sort(latencies);
+        return new Result(name, concurrency, requests, failures.size(), payloadBytes, expectedPages,
+                percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                requests / (elapsed / 1e9), heapUsed, heapPeak, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1],
+                failures.stream().limit(10).toList());
+    }
+
+    private static int pages(byte[] pdf) throws Exception {
+        try (PDDocument document = PDDocument.load(pdf)) {
+            return document.getNumberOfPages();
+        }
+    }
+
+    /**
+     * Nearest rank, in milliseconds.
+     */
+    private static double percentile(long[] sortedNanos, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedNanos.length);
+        return sortedNanos[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private static long[] gcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return new long[]{count, millis};
+    }
+
+    /**
+     * Sends one request and returns the PDF it was answered with.
+     */
+    @FunctionalInterface
+    interface Call {
+        byte[] send() throws Exception;
+    }
+
+    record Result(String scenario, int concurrency, int requests, int errors, long payloadBytes, int pages,
+                  double p50Millis, double p95Millis, double p99Millis, double requestsPerSecond,
+                  long heapUsedBytes, long heapPeakBytes, long gcCount, long gcMillis, List<String> failures) {
+    }
+}
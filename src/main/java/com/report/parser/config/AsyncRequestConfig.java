@@ -0,0 +1,21 @@
+package com.report.parser.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Gives streamed reports time to wait for render memory, so a report queued behind others isn't timed out
+ * by the servlet container while {@link ReportProperties.Memory#getMaxWait()} would still let it through.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class AsyncRequestConfig implements WebMvcConfigurer {
+    private final ReportProperties reportProperties;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(reportProperties.getMemory().getRequestTimeout().toMillis());
+    }
+}
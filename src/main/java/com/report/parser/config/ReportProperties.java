@@ -0,0 +1,170 @@
+package com.report.parser.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "report")
+public class ReportProperties {
+    private final Templates templates = new Templates();
+    private final Batch batch = new Batch();
+    private final Jobs jobs = new Jobs();
+    private final Images images = new Images();
+    private final Metrics metrics = new Metrics();
+    private final PdfCache pdfCache = new PdfCache();
+    private final DocumentCache documentCache = new DocumentCache();
+    private final Fonts fonts = new Fonts();
+    private final Warmup warmup = new Warmup();
+    private final ParallelRender parallelRender = new ParallelRender();
+    private final Memory memory = new Memory();
+
+    @Data
+    public static class Templates {
+        // .docx templates with optional <id>.json descriptors, leave unset to use the bundled ones
+        private Path directory;
+        // template used when a request doesn't name one
+        private String defaultId = "MyProfile";
+        // recompile templates in the directory when their files change
+        private boolean watch = true;
+        // quiet period after a change before recompiling, so a file that is still being copied is read once
+        private Duration reloadDelay = Duration.ofMillis(500);
+    }
+
+    @Data
+    public static class Images {
+        // maximum number of processed images kept in memory
+        private int maxEntries = 64;
+        // maximum total size of the processed images kept in memory
+        private long maxBytes = 32L * 1024 * 1024;
+        // pixels kept per displayed pixel, so images stay sharp when the PDF is zoomed or printed
+        private double oversampling = 2.0;
+    }
+
+    @Data
+    public static class Metrics {
+        // renders slower than this are logged with their stage breakdown
+        private Duration slowRenderThreshold = Duration.ofSeconds(2);
+    }
+
+    @Data
+    public static class PdfCache {
+        private boolean enabled = true;
+        private long maxMemoryBytes = 64L * 1024 * 1024;
+        // reports pushed out of memory are kept here, leave unset to drop them instead
+        private Path diskDirectory;
+        private long maxDiskBytes = 512L * 1024 * 1024;
+        private Duration ttl = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class DocumentCache {
+        // keep prepared reports with their fields filled in, so a report that only changes its table rows
+        // skips the template copy, text and images
+        private boolean enabled = true;
+        // maximum number of prepared reports kept, one per template and set of field values
+        private int maxEntries = 16;
+        // render memory each kept report holds, taken from the budget of the export that kept it
+        private long entryBytes = 4L * 1024 * 1024;
+    }
+
+    @Data
+    public static class Fonts {
+        // searched in addition to the system font directories
+        private List<Path> directories = new ArrayList<>();
+        // limits system font discovery to matching font names, e.g. ".*(Arial|Times|Calibri).*"
+        private String regex;
+        // template font name to the physical font used when it isn't installed
+        private Map<String, String> fallbacks = new HashMap<>();
+        private String defaultFallback = "Times New Roman";
+    }
+
+    @Data
+    public static class Warmup {
+        // render a report at startup, before the readiness probe reports ready
+        private boolean enabled = true;
+    }
+
+    @Data
+    public static class ParallelRender {
+        // render long reports in parts on several cores and merge the PDFs
+        private boolean enabled = false;
+        // reports are cut at section breaks and tables are cut every this many rows
+        private int chunkRows = 250;
+        // parts rendered at the same time, 0 means one per available processor
+        private int parallelism = 0;
+
+        public int getEffectiveParallelism() {
+            return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    @Data
+    public static class Memory {
+        // hold exports back until their estimated memory fits in the budget
+        private boolean enabled = true;
+        // memory all exports in flight may take together, 0 means half of the maximum heap
+        private long maxBytes = 0;
+        // how long an export waits for memory before it is turned away
+        private Duration maxWait = Duration.ofMinutes(2);
+        // how long a streamed response may take once its wait for memory is over
+        private Duration renderTimeout = Duration.ofSeconds(30);
+        // estimate per export, plus the per-row cost of the renderer it goes through
+        private long baseBytes = 16L * 1024 * 1024;
+        private long foBytesPerRow = 256L * 1024;
+        private long directBytesPerRow = 8L * 1024;
+        // intermediate PDFs and FO larger than this are written to temp files
+        private long spillThreshold = 8L * 1024 * 1024;
+        // where intermediates are spilled, leave unset for the system temp directory
+        private Path spillDirectory;
+        // template images larger than this are kept outside the heap
+        private long offHeapImageBytes = 256L * 1024;
+
+        public long getEffectiveMaxBytes() {
+            return maxBytes > 0 ? maxBytes : Runtime.getRuntime().maxMemory() / 2;
+        }
+
+        public Duration getRequestTimeout() {
+            return enabled ? maxWait.plus(renderTimeout) : renderTimeout;
+        }
+
+        public Path getEffectiveSpillDirectory() {
+            return spillDirectory != null ? spillDirectory : Path.of(System.getProperty("java.io.tmpdir"));
+        }
+    }
+
+    @Data
+    public static class Batch {
+        // reports rendered at the same time, 0 means one per available processor
+        private int maxConcurrency = 0;
+
+        public int getEffectiveMaxConcurrency() {
+            return maxConcurrency > 0 ? maxConcurrency : Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    @Data
+    public static class Jobs {
+        // how long finished job results stay available
+        private Duration resultTtl = Duration.ofMinutes(10);
+        private final Lane interactive = new Lane(2, 100, 50_000);
+        private final Lane bulk = new Lane(1, 20, 500_000);
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Lane {
+        private int workers;
+        // jobs waiting for a worker before submissions are rejected
+        private int queueCapacity;
+        // estimated cost (table rows plus image kilobytes) allowed to be queued or running at once
+        private long maxPendingCost;
+    }
+}
@@ -1,28 +1,135 @@
 package com.report.parser.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.report.parser.service.DocumentCache;
+import com.report.parser.service.ImageCache;
 import com.report.parser.service.ParserService;
+import com.report.parser.service.PdfCache;
+import com.report.parser.service.PreparedReport;
+import com.report.parser.service.ReportGenerationService;
+import com.report.parser.service.ReportTemplate;
+import com.report.parser.service.TemplateRegistry;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.Resource;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequiredArgsConstructor
 public class ParserController {
+    private static final String REPORT_FILE_NAME = "report.pdf";
+
     private final ParserService parserService;
+    private final ReportGenerationService reportGenerationService;
+    private final TemplateRegistry templateRegistry;
+    private final ImageCache imageCache;
+    private final PdfCache pdfCache;
+    private final DocumentCache documentCache;
 
     @GetMapping("/generate")
-    public ResponseEntity<Resource> getPreviewReportByTableNameAndRecordId() throws IOException {
-        Resource resp = parserService.buildDataAndGetReport();
+    public ResponseEntity<StreamingResponseBody> getPreviewReportByTableNameAndRecordId(
+            @RequestParam(required = false) String template,
+            @RequestParam(defaultValue = "false") boolean buffered, WebRequest request) throws Exception {
+        ReportTemplate reportTemplate = parserService.getTemplate(template);
+        Map<String, Object> payload = parserService.readPayload();
+        String reportKey = parserService.reportKey(reportTemplate, payload);
+        // the key covers every input of the report, so a client holding it already has this report; the tag is
+        // weak as two renders of the same inputs aren't byte for byte the same PDF, e.g. their creation dates differ.
+        // The check also sets the ETag header on the response
+        String eTag = "W/\"" + reportKey + "\"";
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, String.format("attachment; filename=\"%s\"", REPORT_FILE_NAME));
+
+        Optional<PdfCache.Entry> cached = pdfCache.get(reportKey);
+        if (cached.isPresent()) {
+            return response.contentLength(cached.get().size()).body(cached.get()::writeTo);
+        }
+        PreparedReport report = parserService.prepareReport(reportTemplate, payload);
+
+        // buffer in memory only when the caller needs a Content-Length
+        if (buffered) {
+            ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+            reportGenerationService.writePdf(report, pdf);
+            pdfCache.put(reportKey, pdf.toByteArray());
+            return response.contentLength(pdf.size()).body(pdf::writeTo);
+        }
+        return response.body(outputStream -> {
+            // record the report for the cache while the client receives it, in a file once it outgrows memory;
+            // shielded, as the renderer closes the stream it writes to before the recording is committed
+            try (PdfCache.Recorder recorder = pdfCache.record(reportKey)) {
+                reportGenerationService.writePdf(report, new TeeOutputStream(outputStream, CloseShieldOutputStream.wrap(recorder)));
+                recorder.commit();
+            }
+        });
+    }
+
+    @PostMapping(value = "/generate", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> generate(@RequestParam(required = false) String template,
+                                                          InputStream payload) throws Exception {
+        ReportTemplate reportTemplate = parserService.getTemplate(template);
+        PreparedReport report;
+        try {
+            // the body is read while the report is built, table records included
+            report = parserService.prepareReport(reportTemplate, payload);
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid payload: " + e.getOriginalMessage());
+        }
         return ResponseEntity.ok()
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .header(HttpHeaders.CONTENT_DISPOSITION, String.format("attachment; filename=\"%s\"", resp.getFilename()))
-                .body(resp);
+                .header(HttpHeaders.CONTENT_DISPOSITION, String.format("attachment; filename=\"%s\"", REPORT_FILE_NAME))
+                .body(outputStream -> reportGenerationService.writePdf(report, outputStream));
+    }
+
+    @PostMapping("/generate/batch")
+    public ResponseEntity<StreamingResponseBody> generateBatch(@RequestBody List<Map<String, Object>> payloads,
+                                                               @RequestParam(required = false) String template,
+                                                               @RequestParam(defaultValue = "false") boolean merged) {
+        StreamingResponseBody body = parserService.buildBatchReport(parserService.getTemplate(template), payloads, merged);
+        String fileName = merged ? "reports.pdf" : "reports.zip";
+        return ResponseEntity.ok()
+                .contentType(merged ? MediaType.APPLICATION_PDF : MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, String.format("attachment; filename=\"%s\"", fileName))
+                .body(body);
+    }
+
+    @GetMapping("/templates")
+    public ResponseEntity<List<ReportTemplate.Summary>> getTemplates() {
+        return ResponseEntity.ok(templateRegistry.getSummaries());
+    }
+
+    @GetMapping("/reports/cache")
+    public ResponseEntity<PdfCache.Stats> getReportCacheStats() {
+        return ResponseEntity.ok(pdfCache.getStats());
+    }
+
+    @GetMapping("/documents/cache")
+    public ResponseEntity<DocumentCache.Stats> getDocumentCacheStats() {
+        return ResponseEntity.ok(documentCache.getStats());
+    }
+
+    @GetMapping("/images/cache")
+    public ResponseEntity<ImageCache.Stats> getImageCacheStats() {
+        return ResponseEntity.ok(imageCache.getStats());
     }
 }
@@ -0,0 +1,103 @@
+package com.report.parser.controller;
+
+import com.report.parser.service.ParserService;
+import com.report.parser.service.RenderJob;
+import com.report.parser.service.RenderJobService;
+import com.report.parser.service.ReportGenerationService;
+import com.report.parser.service.ReportTemplate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/jobs")
+@RequiredArgsConstructor
+public class RenderJobController {
+    private final ParserService parserService;
+    private final ReportGenerationService reportGenerationService;
+    private final RenderJobService renderJobService;
+
+    @PostMapping
+    public ResponseEntity<RenderJob.Status> submitReport(@RequestBody Map<String, Object> payload,
+                                                         @RequestParam(required = false) String template) {
+        ReportTemplate reportTemplate = parserService.getTemplate(template);
+        long cost = parserService.estimateRenderCost(reportTemplate, List.of(payload));
+        RenderJob job = renderJobService.submit(RenderJob.Lane.INTERACTIVE, cost, MediaType.APPLICATION_OCTET_STREAM_VALUE, "report.pdf",
+                outputStream -> reportGenerationService.writePdf(parserService.prepareReport(reportTemplate, payload), outputStream));
+        return accepted(job);
+    }
+
+    @PostMapping("/batch")
+    public ResponseEntity<RenderJob.Status> submitBatch(@RequestBody List<Map<String, Object>> payloads,
+                                                        @RequestParam(required = false) String template,
+                                                        @RequestParam(defaultValue = "false") boolean merged) {
+        ReportTemplate reportTemplate = parserService.getTemplate(template);
+        long cost = parserService.estimateRenderCost(reportTemplate, payloads);
+        RenderJob job = renderJobService.submit(RenderJob.Lane.BULK, cost,
+                merged ? MediaType.APPLICATION_PDF_VALUE : "application/zip", merged ? "reports.pdf" : "reports.zip",
+                parserService.buildBatchReport(reportTemplate, payloads, merged)::writeTo);
+        return accepted(job);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<RenderJob.Status> getStatus(@PathVariable String id) {
+        return ResponseEntity.ok(findJob(id).getStatus());
+    }
+
+    @GetMapping("/{id}/result")
+    public ResponseEntity<StreamingResponseBody> getResult(@PathVariable String id) throws IOException {
+        RenderJob job = findJob(id);
+        if (job.getState() == RenderJob.State.FAILED) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, job.getError());
+        }
+        RenderJob.Result result = job.getResult();
+        if (result == null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Job " + id + " is " + job.getState());
+        }
+        // opened here, so a result that expires while it is sent is still sent in full
+        InputStream content = result.openStream();
+        if (content == null) {
+            throw expired(id);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(result.getContentType()))
+                .contentLength(result.size())
+                .header(HttpHeaders.CONTENT_DISPOSITION, String.format("attachment; filename=\"%s\"", result.getFileName()))
+                .body(outputStream -> {
+                    try (content) {
+                        content.transferTo(outputStream);
+                    }
+                });
+    }
+
+    private RenderJob findJob(String id) {
+        return renderJobService.get(id).orElseThrow(() -> expired(id));
+    }
+
+    private static ResponseStatusException expired(String id) {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown or expired job " + id);
+    }
+
+    private ResponseEntity<RenderJob.Status> accepted(RenderJob job) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/jobs/" + job.getId()))
+                .body(job.getStatus());
+    }
+}
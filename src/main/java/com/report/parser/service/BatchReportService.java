@@ -0,0 +1,144 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Renders many payloads against one template on virtual threads. At most max-concurrency reports are
+ * rendered at a time, and finished reports are written out in payload order as soon as they are ready.
+ */
+@Service
+@Log4j2
+@RequiredArgsConstructor
+public class BatchReportService {
+    private final ReportGenerationService reportGenerationService;
+    private final ReportProperties reportProperties;
+
+    public void writeZip(List<Map<String, Object>> payloads, ReportPreparer preparer, OutputStream outputStream) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        renderInOrder(payloads, preparer, (index, pdf) -> {
+            try (pdf) {
+                zip.putNextEntry(new ZipEntry(String.format("report-%05d.pdf", index + 1)));
+                pdf.inputStream().transferTo(zip);
+                zip.closeEntry();
+            }
+        });
+        zip.finish();
+    }
+
+    /**
+     * Every report is held until the last one is done, past the spill threshold in a temp file.
+     */
+    public void writeMerged(List<Map<String, Object>> payloads, ReportPreparer preparer, OutputStream outputStream) throws IOException {
+        PDFMergerUtility merger = new PDFMergerUtility();
+        List<SpillBuffer> pdfs = new ArrayList<>();
+        try {
+            renderInOrder(payloads, preparer, (index, pdf) -> {
+                pdfs.add(pdf);
+                merger.addSource(pdf.inputStream());
+            });
+            merger.setDestinationStream(outputStream);
+            merger.mergeDocuments(SpillBuffer.memoryUsage(reportProperties.getMemory()));
+        } finally {
+            for (SpillBuffer pdf : pdfs) {
+                pdf.close();
+            }
+        }
+    }
+
+    private void renderInOrder(List<Map<String, Object>> payloads, ReportPreparer preparer, PdfConsumer consumer) throws IOException {
+        int maxConcurrency = reportProperties.getBatch().getEffectiveMaxConcurrency();
+        Deque<Future<SpillBuffer>> pending = new ArrayDeque<>();
+        // rendered reports not yet handed to the consumer
+        Set<SpillBuffer> unclaimed = ConcurrentHashMap.newKeySet();
+        int written = 0;
+        try {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                try {
+                    for (Map<String, Object> payload : payloads) {
+                        // FO rendering is CPU bound, so only keep max-concurrency reports in flight
+                        if (pending.size() >= maxConcurrency) {
+                            consumer.accept(written++, await(pending.poll(), unclaimed));
+                        }
+                        pending.add(executor.submit(() -> keep(unclaimed, render(preparer, payload))));
+                    }
+                    while (!pending.isEmpty()) {
+                        consumer.accept(written++, await(pending.poll(), unclaimed));
+                    }
+                } finally {
+                    pending.forEach(future -> future.cancel(true));
+                }
+            }
+        } finally {
+            // the executor has waited for every render, including those that finished after the batch failed
+            // because FOP and PDFBox don't stop on interrupt
+            for (SpillBuffer pdf : unclaimed) {
+                try {
+                    pdf.close();
+                } catch (IOException e) {
+                    log.warn("Unable to delete the temp file of a batch report: {}", e.getMessage());
+                }
+            }
+        }
+        log.info("Rendered batch of {} reports", written);
+    }
+
+    private SpillBuffer render(ReportPreparer preparer, Map<String, Object> payload) throws Exception {
+        PreparedReport report = preparer.prepare(payload);
+        SpillBuffer pdf = new SpillBuffer(reportProperties.getMemory(), ".pdf");
+        try {
+            reportGenerationService.writePdf(report, pdf.outputStream());
+            return pdf;
+        } catch (Exception e) {
+            pdf.close();
+            throw e;
+        }
+    }
+
+    private static SpillBuffer keep(Set<SpillBuffer> unclaimed, SpillBuffer pdf) {
+        unclaimed.add(pdf);
+        return pdf;
+    }
+
+    private static SpillBuffer await(Future<SpillBuffer> future, Set<SpillBuffer> unclaimed) throws IOException {
+        try {
+            SpillBuffer pdf = future.get();
+            unclaimed.remove(pdf);
+            return pdf;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering batch", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to render batch report", e.getCause());
+        }
+    }
+
+    @FunctionalInterface
+    public interface ReportPreparer {
+        PreparedReport prepare(Map<String, Object> payload) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface PdfConsumer {
+        void accept(int index, SpillBuffer pdf) throws IOException;
+    }
+}
@@ -0,0 +1,55 @@
+package com.report.parser.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Image, prepared document and rendered report cache statistics as meters, next to the render metrics.
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheMetrics implements MeterBinder {
+    private final ImageCache imageCache;
+    private final PdfCache pdfCache;
+    private final DocumentCache documentCache;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("report.cache.requests", imageCache, cache -> cache.getStats().hits())
+                .tag("cache", "image").tag("result", "hit").register(registry);
+        FunctionCounter.builder("report.cache.requests", imageCache, cache -> cache.getStats().misses())
+                .tag("cache", "image").tag("result", "miss").register(registry);
+        FunctionCounter.builder("report.cache.evictions", imageCache, cache -> cache.getStats().evictions())
+                .tag("cache", "image").register(registry);
+        Gauge.builder("report.cache.size", imageCache, cache -> cache.getStats().size())
+                .tag("cache", "image").register(registry);
+        Gauge.builder("report.cache.bytes", imageCache, cache -> cache.getStats().bytes())
+                .tag("cache", "image").tag("tier", "memory").baseUnit("bytes").register(registry);
+
+        FunctionCounter.builder("report.cache.requests", documentCache, cache -> cache.getStats().hits())
+                .tag("cache", "document").tag("result", "hit").register(registry);
+        FunctionCounter.builder("report.cache.requests", documentCache, cache -> cache.getStats().misses())
+                .tag("cache", "document").tag("result", "miss").register(registry);
+        FunctionCounter.builder("report.cache.evictions", documentCache, cache -> cache.getStats().evictions())
+                .tag("cache", "document").register(registry);
+        Gauge.builder("report.cache.size", documentCache, cache -> cache.getStats().size())
+                .tag("cache", "document").register(registry);
+
+        FunctionCounter.builder("report.cache.requests", pdfCache, cache -> cache.getStats().hits())
+                .tag("cache", "pdf").tag("result", "hit").register(registry);
+        FunctionCounter.builder("report.cache.requests", pdfCache, cache -> cache.getStats().misses())
+                .tag("cache", "pdf").tag("result", "miss").register(registry);
+        FunctionCounter.builder("report.cache.evictions", pdfCache, cache -> cache.getStats().evictions())
+                .tag("cache", "pdf").register(registry);
+        Gauge.builder("report.cache.size", pdfCache, cache -> cache.getStats().memoryEntries() + cache.getStats().diskEntries())
+                .tag("cache", "pdf").register(registry);
+        Gauge.builder("report.cache.bytes", pdfCache, cache -> cache.getStats().memoryBytes())
+                .tag("cache", "pdf").tag("tier", "memory").baseUnit("bytes").register(registry);
+        Gauge.builder("report.cache.bytes", pdfCache, cache -> cache.getStats().diskBytes())
+                .tag("cache", "pdf").tag("tier", "disk").baseUnit("bytes").register(registry);
+    }
+}
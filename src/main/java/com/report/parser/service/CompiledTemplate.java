@@ -0,0 +1,28 @@
+package com.report.parser.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+
+import java.io.ByteArrayInputStream;
+/**
+ * A template that has already been loaded, run through VariablePrepare, indexed and alignment fixed.
+ * The prepared package is kept in its saved form so every request gets an independent copy. Loading it is
+ * the cheapest copy docx4j offers: XmlUtils.deepCopy of the main document part alone, or PartialDeepCopy of
+ * the package, which also shares the content types, both take longer, since they marshal and unmarshal too.
+ * Templates that passed the direct renderer's check at compile time have their reports written without XSL-FO.
+ */
+@Getter
+@RequiredArgsConstructor
+public class CompiledTemplate {
+    private final String name;
+    private final String checksum;
+    private final TemplateIndex templateIndex;
+    private final byte[] preparedPackage;
+    private final boolean directRender;
+
+    public WordprocessingMLPackage newDocument() throws Docx4JException {
+        return WordprocessingMLPackage.load(new ByteArrayInputStream(preparedPackage));
+    }
+}
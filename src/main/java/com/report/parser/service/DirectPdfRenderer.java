@@ -0,0 +1,1140 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import jakarta.xml.bind.JAXBElement;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.docx4j.XmlUtils;
+import org.docx4j.dml.picture.Pic;
+import org.docx4j.dml.wordprocessingDrawing.Inline;
+import org.docx4j.fonts.PhysicalFont;
+import org.docx4j.fonts.PhysicalFonts;
+import org.docx4j.model.PropertyResolver;
+import org.docx4j.model.styles.StyleUtil;
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.Part;
+import org.docx4j.openpackaging.parts.ThemePart;
+import org.docx4j.openpackaging.parts.WordprocessingML.BinaryPart;
+import org.docx4j.openpackaging.parts.WordprocessingML.DocumentSettingsPart;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+import org.docx4j.wml.Body;
+import org.docx4j.wml.BooleanDefaultTrue;
+import org.docx4j.wml.Br;
+import org.docx4j.wml.CTBookmark;
+import org.docx4j.wml.CTBorder;
+import org.docx4j.wml.CTHeight;
+import org.docx4j.wml.CTMarkupRange;
+import org.docx4j.wml.CTShd;
+import org.docx4j.wml.CTTblCellMar;
+import org.docx4j.wml.CTTblPrBase;
+import org.docx4j.wml.CTVerticalJc;
+import org.docx4j.wml.CommentRangeEnd;
+import org.docx4j.wml.CommentRangeStart;
+import org.docx4j.wml.Drawing;
+import org.docx4j.wml.JcEnumeration;
+import org.docx4j.wml.P;
+import org.docx4j.wml.PPr;
+import org.docx4j.wml.PPrBase;
+import org.docx4j.wml.ProofErr;
+import org.docx4j.wml.R;
+import org.docx4j.wml.RFonts;
+import org.docx4j.wml.RPr;
+import org.docx4j.wml.STBorder;
+import org.docx4j.wml.STBrType;
+import org.docx4j.wml.STHeightRule;
+import org.docx4j.wml.STLineSpacingRule;
+import org.docx4j.wml.STVerticalAlignRun;
+import org.docx4j.wml.STVerticalJc;
+import org.docx4j.wml.SectPr;
+import org.docx4j.wml.Style;
+import org.docx4j.wml.Tbl;
+import org.docx4j.wml.TblBorders;
+import org.docx4j.wml.TblPr;
+import org.docx4j.wml.TblWidth;
+import org.docx4j.wml.Tc;
+import org.docx4j.wml.TcMar;
+import org.docx4j.wml.TcPr;
+import org.docx4j.wml.Text;
+import org.docx4j.wml.Tr;
+import org.docx4j.wml.TrPr;
+import org.docx4j.wml.UnderlineEnumeration;
+import org.springframework.stereotype.Service;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes prepared reports straight to PDF with PDFBox, for templates that keep to paragraphs, runs, tables
+ * and inline images. The report is laid out in one walk over the prepared tree, so no XSL-FO is generated
+ * and parsed. Properties are resolved through the styles like docx4j does, fonts come from the font mapper
+ * or else the standard PDF fonts, tables keep their grid column widths and images their extents. Page
+ * margins, line heights and table rows are measured the way they come out of docx4j's XSL-FO, so a report
+ * breaks pages where the XSL-FO renderer breaks them.
+ * <p>
+ * Anything else, e.g. headers, fields, numbering, floating objects or merged rows, stops the render with an
+ * {@link UnsupportedContentException} before a byte is written. Lines wrap greedily at spaces and hyphens and
+ * justified text is set flush left.
+ */
+@Service
+public class DirectPdfRenderer {
+    private static final float TWIPS_PER_POINT = 20;
+    private static final float EMUS_PER_POINT = 12700;
+    // Word's defaults for what a document leaves out
+    private static final float DEFAULT_FONT_SIZE = 10;
+    private static final float DEFAULT_CELL_MARGIN = 108 / TWIPS_PER_POINT;
+    private static final float DEFAULT_TAB_STOP = 720 / TWIPS_PER_POINT;
+    private static final int DEFAULT_HEADER_DISTANCE = 708;
+    private static final float AUTO_SPACING = 14;
+    // XSL-FO's line-height="normal", which is what the FO renderer gives lines without line spacing
+    private static final float NORMAL_LINE_HEIGHT = 1.2f;
+    private static final Map<String, Color> HIGHLIGHTS = Map.ofEntries(
+            Map.entry("black", Color.BLACK), Map.entry("blue", Color.BLUE), Map.entry("cyan", Color.CYAN),
+            Map.entry("green", Color.GREEN), Map.entry("magenta", Color.MAGENTA), Map.entry("red", Color.RED),
+            Map.entry("yellow", Color.YELLOW), Map.entry("white", Color.WHITE),
+            Map.entry("darkBlue", new Color(0x00008B)), Map.entry("darkCyan", new Color(0x008B8B)),
+            Map.entry("darkGreen", new Color(0x006400)), Map.entry("darkMagenta", new Color(0x800080)),
+            Map.entry("darkRed", new Color(0x8B0000)), Map.entry("darkYellow", new Color(0x808000)),
+            Map.entry("darkGray", new Color(0xA9A9A9)), Map.entry("lightGray", new Color(0xD3D3D3)));
+
+    private final ReportProperties reportProperties;
+    // font files are read once, the fonts are parsed and subset per report
+    private final Map<URI, byte[]> fontFiles = new ConcurrentHashMap<>();
+
+    public DirectPdfRenderer(ReportProperties reportProperties) {
+        this.reportProperties = reportProperties;
+    }
+
+    /**
+     * @throws UnsupportedContentException if the report uses something this renderer doesn't lay out, in which
+     *                                     case nothing has been written
+     */
+    public void render(WordprocessingMLPackage wordMLPackage, OutputStream outputStream) throws IOException, UnsupportedContentException {
+        // page content and font subsets past the spill threshold are buffered in a scratch file
+        try (PDDocument document = new PDDocument(SpillBuffer.memoryUsage(reportProperties.getMemory()))) {
+            new Layout(wordMLPackage, document).body();
+            document.save(outputStream);
+        }
+    }
+
+    private byte[] fontFile(URI uri) throws IOException {
+        if (uri == null) {
+            throw new IOException("no font file");
+        }
+        byte[] file = fontFiles.get(uri);
+        if (file == null) {
+            Path path;
+            try {
+                path = Path.of(uri);
+            } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+                // e.g. a font inside a jar
+                throw new IOException("font file " + uri + " isn't on a file system", e);
+            }
+            file = Files.readAllBytes(path);
+            fontFiles.put(uri, file);
+        }
+        return file;
+    }
+
+    /**
+     * Thrown for content the direct renderer doesn't handle, naming it.
+     */
+    static class UnsupportedContentException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedContentException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Lays out one report, page by page. Coordinates are PDF points from the bottom left corner.
+     */
+    private class Layout {
+        private final WordprocessingMLPackage wordMLPackage;
+        private final PDDocument document;
+        private final PropertyResolver propertyResolver;
+        // data rows share their properties with the template row, so most lookups hit
+        private final Map<ParagraphKey, PPr> paragraphProperties = new HashMap<>();
+        private final Map<StyleKey, TextStyle> textStyles = new HashMap<>();
+        private final Map<String, PDFont> fonts = new HashMap<>();
+        private final Map<Part, PDImageXObject> images = new IdentityHashMap<>();
+        private final float tabStop;
+        private float pageWidth;
+        private float pageHeight;
+        private float marginTop;
+        private float marginBottom;
+        private float marginLeft;
+        private float contentWidth;
+        private PDPageContentStream canvas;
+        private float y;
+
+        Layout(WordprocessingMLPackage wordMLPackage, PDDocument document) {
+            this.wordMLPackage = wordMLPackage;
+            this.document = document;
+            this.propertyResolver = wordMLPackage.getMainDocumentPart().getPropertyResolver();
+            DocumentSettingsPart settingsPart = wordMLPackage.getMainDocumentPart().getDocumentSettingsPart();
+            this.tabStop = settingsPart != null && settingsPart.getJaxbElement().getDefaultTabStop() != null
+                    ? twips(settingsPart.getJaxbElement().getDefaultTabStop().getVal(), DEFAULT_TAB_STOP) : DEFAULT_TAB_STOP;
+        }
+
+        void body() throws IOException, UnsupportedContentException {
+            Body body = wordMLPackage.getMainDocumentPart().getJaxbElement().getBody();
+            page(body.getSectPr());
+            newPage();
+            for (Object item : body.getContent()) {
+                Object element = XmlUtils.unwrap(item);
+                if (element instanceof P paragraph) {
+                    flow(paragraph(paragraph, contentWidth, null));
+                } else if (element instanceof Tbl table) {
+                    table(table);
+                } else if (!isMarker(element)) {
+                    throw unsupported(item);
+                }
+            }
+            canvas.close();
+        }
+
+        private void page(SectPr sectPr) throws UnsupportedContentException {
+            if (sectPr != null && !sectPr.getEGHdrFtrReferences().isEmpty()) {
+                throw new UnsupportedContentException("headers and footers");
+            }
+            if (sectPr != null && sectPr.getCols() != null && sectPr.getCols().getNum() != null
+                    && sectPr.getCols().getNum().intValue() > 1) {
+                throw new UnsupportedContentException("text columns");
+            }
+            SectPr.PgSz size = sectPr != null ? sectPr.getPgSz() : null;
+            SectPr.PgMar margins = sectPr != null ? sectPr.getPgMar() : null;
+            pageWidth = twips(size != null ? size.getW() : null, 612);
+            pageHeight = twips(size != null ? size.getH() : null, 792);
+            marginTop = bodyMargin(margins != null ? margins.getTop() : null, margins != null ? margins.getHeader() : null);
+            marginBottom = bodyMargin(margins != null ? margins.getBottom() : null, margins != null ? margins.getFooter() : null);
+            marginLeft = twips(margins != null ? margins.getLeft() : null, 72);
+            contentWidth = pageWidth - marginLeft - twips(margins != null ? margins.getRight() : null, 72);
+        }
+
+        private void newPage() throws IOException {
+            if (canvas != null) {
+                canvas.close();
+            }
+            PDPage page = new PDPage(new PDRectangle(pageWidth, pageHeight));
+            document.addPage(page);
+            canvas = new PDPageContentStream(document, page);
+            y = pageHeight - marginTop;
+        }
+
+        private boolean atPageTop() {
+            return y == pageHeight - marginTop;
+        }
+
+        /**
+         * Places a body paragraph line by line, starting new pages as they fill up.
+         */
+        private void flow(Block block) throws IOException {
+            if (block.pageBreakBefore() && !atPageTop()) {
+                newPage();
+            }
+            if (!atPageTop()) {
+                y -= block.spaceBefore();
+            }
+            for (Line line : block.lines()) {
+                if (y - line.height() < marginBottom && !atPageTop()) {
+                    newPage();
+                }
+                draw(block, line, marginLeft, y);
+                y -= line.height();
+                if (line.pageBreakAfter()) {
+                    newPage();
+                }
+            }
+            y -= block.spaceAfter();
+        }
+
+        // paragraphs
+
+        /**
+         * @param tableParagraph the paragraph properties of the table style, for paragraphs in a table
+         */
+        private Block paragraph(P paragraph, float width, PPr tableParagraph) throws IOException, UnsupportedContentException {
+            PPr properties = paragraphProperties(paragraph.getPPr(), tableParagraph);
+            PPrBase.Spacing spacing = properties.getSpacing();
+            PPrBase.Ind ind = properties.getInd();
+            float indentLeft = ind != null ? twips(ind.getLeft(), 0) : 0;
+            float indentRight = ind != null ? twips(ind.getRight(), 0) : 0;
+            float firstLine = ind != null ? twips(ind.getFirstLine(), 0) - twips(ind.getHanging(), 0) : 0;
+            float spaceBefore = spacing == null ? 0 : spacing.isBeforeAutospacing() ? AUTO_SPACING : twips(spacing.getBefore(), 0);
+            float spaceAfter = spacing == null ? 0 : spacing.isAfterAutospacing() ? AUTO_SPACING : twips(spacing.getAfter(), 0);
+
+            LineBreaker lines = new LineBreaker(properties, width - indentLeft - indentRight, firstLine,
+                    textStyle(null, paragraph.getPPr()));
+            for (Object item : paragraph.getContent()) {
+                Object element = XmlUtils.unwrap(item);
+                if (element instanceof R run) {
+                    run(run, paragraph.getPPr(), lines);
+                } else if (!isMarker(element)) {
+                    throw unsupported(item);
+                }
+            }
+            return new Block(spaceBefore, spaceAfter, indentLeft, firstLine, width - indentLeft - indentRight,
+                    alignment(properties), isOn(properties.getPageBreakBefore()), lines.finish());
+        }
+
+        private PPr paragraphProperties(PPr pPr, PPr tableParagraph) throws UnsupportedContentException {
+            ParagraphKey key = new ParagraphKey(pPr, tableParagraph);
+            PPr properties = paragraphProperties.get(key);
+            if (properties == null) {
+                properties = propertyResolver.getEffectivePPr(pPr);
+                if (tableParagraph != null) {
+                    // like Word, the table style goes between the document defaults and the paragraph's style
+                    properties = XmlUtils.deepCopy(propertyResolver.getEffectivePPr((PPr) null));
+                    StyleUtil.apply(tableParagraph, properties);
+                    if (!isDefaultStyle(pPr)) {
+                        applyStyle(pPr.getPStyle().getVal(), properties, new HashSet<>());
+                    }
+                    if (pPr != null) {
+                        StyleUtil.apply(pPr, properties);
+                    }
+                }
+                if (pPr != null && pPr.getSectPr() != null) {
+                    throw new UnsupportedContentException("section breaks");
+                } else if (properties.getNumPr() != null && properties.getNumPr().getNumId() != null
+                        && properties.getNumPr().getNumId().getVal().signum() > 0) {
+                    throw new UnsupportedContentException("numbered or bulleted paragraphs");
+                } else if (properties.getPBdr() != null || fill(properties.getShd()) != null) {
+                    throw new UnsupportedContentException("paragraph borders or shading");
+                } else if (properties.getFramePr() != null) {
+                    throw new UnsupportedContentException("text frames");
+                } else if (properties.getTabs() != null && !properties.getTabs().getTab().isEmpty()) {
+                    throw new UnsupportedContentException("custom tab stops");
+                } else if (isOn(properties.getBidi())) {
+                    throw new UnsupportedContentException("right-to-left paragraphs");
+                }
+                paragraphProperties.put(key, properties);
+            }
+            return properties;
+        }
+
+        private void applyStyle(String styleId, PPr properties, Set<String> seen) {
+            Style style = wordMLPackage.getMainDocumentPart().getStyleDefinitionsPart().getStyleById(styleId);
+            if (style == null || !seen.add(styleId)) {
+                return;
+            }
+            if (style.getBasedOn() != null) {
+                applyStyle(style.getBasedOn().getVal(), properties, seen);
+            }
+            if (style.getPPr() != null) {
+                StyleUtil.apply(style.getPPr(), properties);
+            }
+        }
+
+        private boolean isDefaultStyle(PPr pPr) {
+            if (pPr == null || pPr.getPStyle() == null) {
+                return true;
+            }
+            Style defaultStyle = wordMLPackage.getMainDocumentPart().getStyleDefinitionsPart().getDefaultParagraphStyle();
+            return defaultStyle != null && pPr.getPStyle().getVal().equals(defaultStyle.getStyleId());
+        }
+
+        private void run(R run, PPr pPr, LineBreaker lines) throws IOException, UnsupportedContentException {
+            TextStyle style = textStyle(run.getRPr(), pPr);
+            if (style == null) {
+                return;
+            }
+            for (Object item : run.getContent()) {
+                if (item instanceof JAXBElement<?> element && !element.getName().getLocalPart().equals("t")
+                        && element.getValue() instanceof Text) {
+                    // instrText and delText
+                    throw unsupported(item);
+                }
+                Object element = XmlUtils.unwrap(item);
+                if (element instanceof Text text) {
+                    lines.text(text.getValue(), style);
+                } else if (element instanceof R.Tab) {
+                    lines.tab(style);
+                } else if (element instanceof R.NoBreakHyphen) {
+                    lines.text("-", style);
+                } else if (element instanceof R.Cr) {
+                    lines.lineBreak(false);
+                } else if (element instanceof Br br) {
+                    if (br.getType() == STBrType.COLUMN) {
+                        throw new UnsupportedContentException("column breaks");
+                    }
+                    lines.lineBreak(br.getType() == STBrType.PAGE);
+                } else if (element instanceof Drawing drawing) {
+                    for (Object drawn : drawing.getAnchorOrInline()) {
+                        if (!(drawn instanceof Inline inline)) {
+                            throw new UnsupportedContentException("floating drawings");
+                        }
+                        lines.image(image(inline), inline.getExtent().getCx() / EMUS_PER_POINT,
+                                inline.getExtent().getCy() / EMUS_PER_POINT);
+                    }
+                } else if (!(element instanceof R.LastRenderedPageBreak) && !(element instanceof R.SoftHyphen)) {
+                    throw unsupported(item);
+                }
+            }
+        }
+
+        private PDImageXObject image(Inline inline) throws IOException, UnsupportedContentException {
+            Pic pic = inline.getGraphic() != null && inline.getGraphic().getGraphicData() != null
+                    ? inline.getGraphic().getGraphicData().getPic() : null;
+            if (pic == null || pic.getBlipFill() == null || pic.getBlipFill().getBlip() == null
+                    || pic.getBlipFill().getBlip().getEmbed() == null) {
+                throw new UnsupportedContentException("drawings other than embedded pictures");
+            }
+            MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+            Part part = documentPart.getRelationshipsPart().getPart(pic.getBlipFill().getBlip().getEmbed());
+            if (!(part instanceof BinaryPart binaryPart)) {
+                throw new UnsupportedContentException("pictures without image data");
+            }
+            PDImageXObject image = images.get(part);
+            if (image == null) {
+                try {
+                    image = PDImageXObject.createFromByteArray(document, binaryPart.getBytes(), part.getPartName().getName());
+                } catch (IllegalArgumentException e) {
+                    throw new UnsupportedContentException("image " + part.getPartName().getName() + ": " + e.getMessage());
+                }
+                images.put(part, image);
+            }
+            return image;
+        }
+
+        /**
+         * The run's effective text style, or null if the run is hidden.
+         */
+        private TextStyle textStyle(RPr rPr, PPr pPr) throws IOException, UnsupportedContentException {
+            StyleKey key = new StyleKey(rPr, pPr);
+            if (textStyles.containsKey(key)) {
+                return textStyles.get(key);
+            }
+            RPr properties = propertyResolver.getEffectiveRPr(rPr, pPr);
+            TextStyle style = null;
+            if (!isOn(properties.getVanish())) {
+                float size = properties.getSz() != null ? properties.getSz().getVal().floatValue() / 2 : DEFAULT_FONT_SIZE;
+                float rise = properties.getPosition() != null ? properties.getPosition().getVal().floatValue() / 2 : 0;
+                if (properties.getVertAlign() != null && properties.getVertAlign().getVal() == STVerticalAlignRun.SUPERSCRIPT) {
+                    rise += size / 3;
+                    size *= 0.65f;
+                } else if (properties.getVertAlign() != null && properties.getVertAlign().getVal() == STVerticalAlignRun.SUBSCRIPT) {
+                    rise -= size / 7;
+                    size *= 0.65f;
+                }
+                PDFont font = font(fontName(properties.getRFonts()), isOn(properties.getB()), isOn(properties.getI()));
+                boolean underline = properties.getU() != null && properties.getU().getVal() != UnderlineEnumeration.NONE;
+                boolean strike = isOn(properties.getStrike()) || isOn(properties.getDstrike());
+                boolean caps = isOn(properties.getCaps()) || isOn(properties.getSmallCaps());
+                Color highlight = properties.getHighlight() != null && properties.getHighlight().getVal() != null
+                        ? HIGHLIGHTS.get(properties.getHighlight().getVal()) : null;
+                style = new TextStyle(font, size, rise, color(properties.getColor() != null ? properties.getColor().getVal() : null),
+                        highlight, underline, strike, caps);
+            }
+            textStyles.put(key, style);
+            return style;
+        }
+
+        private String fontName(RFonts rFonts) throws UnsupportedContentException {
+            if (rFonts == null) {
+                return null;
+            } else if (rFonts.getAscii() != null) {
+                return rFonts.getAscii();
+            } else if (rFonts.getAsciiTheme() != null) {
+                ThemePart themePart = wordMLPackage.getMainDocumentPart().getThemePart();
+                try {
+                    return themePart != null ? themePart.getFontFromTheme(rFonts.getAsciiTheme()) : null;
+                } catch (Docx4JException e) {
+                    throw new UnsupportedContentException("unreadable theme fonts: " + e.getMessage());
+                }
+            }
+            return rFonts.getHAnsi();
+        }
+
+        /**
+         * The mapped physical font embedded as a subset, or the closest standard PDF font when the mapper has none.
+         */
+        private PDFont font(String name, boolean bold, boolean italic) throws IOException, UnsupportedContentException {
+            String key = name + (bold ? ",bold" : "") + (italic ? ",italic" : "");
+            PDFont font = fonts.get(key);
+            if (font != null) {
+                return font;
+            }
+            PhysicalFont physicalFont = name != null ? wordMLPackage.getFontMapper().get(name) : null;
+            if (physicalFont != null) {
+                PhysicalFont form = bold && italic ? PhysicalFonts.getBoldItalicForm(physicalFont)
+                        : bold ? PhysicalFonts.getBoldForm(physicalFont)
+                        : italic ? PhysicalFonts.getItalicForm(physicalFont) : null;
+                physicalFont = form != null ? form : physicalFont;
+                try {
+                    font = PDType0Font.load(document, new ByteArrayInputStream(fontFile(physicalFont.getEmbeddedURI())), true);
+                } catch (IOException e) {
+                    throw new UnsupportedContentException("font " + physicalFont.getName() + ": " + e.getMessage());
+                }
+            } else {
+                font = standardFont(name, bold, italic);
+            }
+            fonts.put(key, font);
+            return font;
+        }
+
+        // tables
+
+        private void table(Tbl table) throws IOException, UnsupportedContentException {
+            TblPr direct = table.getTblPr();
+            Style tableStyle = propertyResolver.getEffectiveTableStyle(direct);
+            if (tableStyle != null && !tableStyle.getTblStylePr().isEmpty()) {
+                throw new UnsupportedContentException("conditional table style formatting");
+            }
+            CTTblPrBase styled = tableStyle != null ? tableStyle.getTblPr() : null;
+            if (direct != null && direct.getTblpPr() != null) {
+                throw new UnsupportedContentException("floating tables");
+            }
+            if (table.getTblGrid() == null || table.getTblGrid().getGridCol().isEmpty()) {
+                throw new UnsupportedContentException("tables without a grid");
+            }
+            float[] columns = new float[table.getTblGrid().getGridCol().size()];
+            float tableWidth = 0;
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = twips(table.getTblGrid().getGridCol().get(i).getW(), 0);
+                tableWidth += columns[i];
+            }
+            TableProperties properties = new TableProperties(
+                    direct != null && direct.getTblBorders() != null ? direct.getTblBorders() : styled != null ? styled.getTblBorders() : null,
+                    direct != null && direct.getTblCellMar() != null ? direct.getTblCellMar() : styled != null ? styled.getTblCellMar() : null,
+                    direct != null && direct.getShd() != null ? direct.getShd() : styled != null ? styled.getShd() : null,
+                    tableStyle != null ? tableStyle.getPPr() : null);
+            float x = marginLeft + width(direct != null && direct.getTblInd() != null ? direct.getTblInd() : styled != null ? styled.getTblInd() : null, 0);
+            JcEnumeration alignment = direct != null && direct.getJc() != null ? direct.getJc().getVal()
+                    : styled != null && styled.getJc() != null ? styled.getJc().getVal() : null;
+            if (alignment == JcEnumeration.CENTER) {
+                x = marginLeft + (contentWidth - tableWidth) / 2;
+            } else if (alignment == JcEnumeration.RIGHT) {
+                x = marginLeft + contentWidth - tableWidth;
+            }
+
+            List<Tr> rows = new ArrayList<>();
+            for (Object item : table.getContent()) {
+                Object element = XmlUtils.unwrap(item);
+                if (element instanceof Tr row) {
+                    rows.add(row);
+                } else if (!isMarker(element)) {
+                    throw unsupported(item);
+                }
+            }
+            List<RowBox> headerRows = new ArrayList<>();
+            for (int i = 0; i < rows.size(); i++) {
+                RowBox row = row(rows.get(i), i == 0, i == rows.size() - 1, columns, properties);
+                if (row.height() > pageHeight - marginTop - marginBottom) {
+                    throw new UnsupportedContentException("table rows taller than a page");
+                }
+                if (row.header() && headerRows.size() == i) {
+                    headerRows.add(row);
+                }
+                if (y - row.height() < marginBottom && !atPageTop()) {
+                    newPage();
+                    // header rows repeat at the top of every page the table runs over
+                    if (!row.header()) {
+                        for (RowBox headerRow : headerRows) {
+                            draw(headerRow, x);
+                        }
+                    }
+                }
+                draw(row, x);
+            }
+        }
+
+        private RowBox row(Tr row, boolean first, boolean last, float[] columns, TableProperties table) throws IOException, UnsupportedContentException {
+            boolean header = false;
+            CTHeight height = null;
+            TrPr rowProperties = row.getTrPr();
+            if (rowProperties != null) {
+                for (JAXBElement<?> property : rowProperties.getCnfStyleOrDivIdOrGridBefore()) {
+                    switch (property.getName().getLocalPart()) {
+                        case "tblHeader" -> header = isOn((BooleanDefaultTrue) property.getValue());
+                        case "trHeight" -> height = (CTHeight) property.getValue();
+                        case "gridBefore", "gridAfter", "hidden", "tblCellSpacing" ->
+                                throw new UnsupportedContentException("row property " + property.getName().getLocalPart());
+                        default -> {
+                        }
+                    }
+                }
+            }
+            List<CellBox> cells = new ArrayList<>();
+            int column = 0;
+            float cellX = 0;
+            float rowHeight = 0;
+            List<Tc> rowCells = new ArrayList<>();
+            for (Object item : row.getContent()) {
+                Object element = XmlUtils.unwrap(item);
+                if (element instanceof Tc cell) {
+                    rowCells.add(cell);
+                } else if (!isMarker(element)) {
+                    throw unsupported(item);
+                }
+            }
+            for (Tc cell : rowCells) {
+                TcPr cellProperties = cell.getTcPr();
+                if (cellProperties != null && (cellProperties.getVMerge() != null || cellProperties.getHMerge() != null)) {
+                    throw new UnsupportedContentException("merged cells");
+                }
+                if (cellProperties != null && cellProperties.getTextDirection() != null) {
+                    throw new UnsupportedContentException("vertical text");
+                }
+                int span = cellProperties != null && cellProperties.getGridSpan() != null ? cellProperties.getGridSpan().getVal().intValue() : 1;
+                if (column + span > columns.length) {
+                    throw new UnsupportedContentException("cells outside the table grid");
+                }
+                float cellWidth = 0;
+                for (int i = column; i < column + span; i++) {
+                    cellWidth += columns[i];
+                }
+                TcMar cellMargins = cellProperties != null ? cellProperties.getTcMar() : null;
+                CTTblCellMar tableMargins = table.cellMargins();
+                float top = margin(cellMargins != null ? cellMargins.getTop() : null, tableMargins != null ? tableMargins.getTop() : null, 0);
+                float left = margin(cellMargins != null ? cellMargins.getLeft() : null, tableMargins != null ? tableMargins.getLeft() : null, DEFAULT_CELL_MARGIN);
+                float bottom = margin(cellMargins != null ? cellMargins.getBottom() : null, tableMargins != null ? tableMargins.getBottom() : null, 0);
+                float right = margin(cellMargins != null ? cellMargins.getRight() : null, tableMargins != null ? tableMargins.getRight() : null, DEFAULT_CELL_MARGIN);
+
+                List<Block> blocks = new ArrayList<>();
+                float contentHeight = 0;
+                for (Object item : cell.getContent()) {
+                    Object element = XmlUtils.unwrap(item);
+                    if (element instanceof P paragraph) {
+                        Block block = paragraph(paragraph, cellWidth - left - right, table.paragraph());
+                        if (block.pageBreakBefore() || block.lines().stream().anyMatch(Line::pageBreakAfter)) {
+                            throw new UnsupportedContentException("page breaks inside tables");
+                        }
+                        blocks.add(block);
+                    } else if (element instanceof Tbl) {
+                        throw new UnsupportedContentException("nested tables");
+                    } else if (!isMarker(element)) {
+                        throw unsupported(item);
+                    }
+                }
+                if (!blocks.isEmpty()) {
+                    // like XSL-FO, spacing where a cell begins or ends is discarded
+                    blocks.set(0, blocks.get(0).withSpacing(0, blocks.get(0).spaceAfter()));
+                    int end = blocks.size() - 1;
+                    blocks.set(end, blocks.get(end).withSpacing(blocks.get(end).spaceBefore(), 0));
+                }
+                for (Block block : blocks) {
+                    contentHeight += block.height();
+                }
+                TcPr.TcBorders borders = cellProperties != null ? cellProperties.getTcBorders() : null;
+                TblBorders tableBorders = table.borders();
+                BorderLine topBorder = border(borders != null ? borders.getTop() : null, tableBorders == null ? null : first ? tableBorders.getTop() : tableBorders.getInsideH());
+                BorderLine bottomBorder = border(borders != null ? borders.getBottom() : null, tableBorders == null ? null : last ? tableBorders.getBottom() : tableBorders.getInsideH());
+                // like XSL-FO's collapsed borders, half of each horizontal border takes room inside the row
+                top += topBorder != null ? topBorder.width() / 2 : 0;
+                bottom += bottomBorder != null ? bottomBorder.width() / 2 : 0;
+                CellBox box = new CellBox(cellX, cellWidth, top, left, blocks, contentHeight,
+                        cellProperties != null && cellProperties.getVAlign() != null ? cellProperties.getVAlign() : null,
+                        fill(cellProperties != null && cellProperties.getShd() != null ? cellProperties.getShd() : table.shading()),
+                        topBorder,
+                        border(borders != null ? borders.getLeft() : null, tableBorders == null ? null : column == 0 ? tableBorders.getLeft() : tableBorders.getInsideV()),
+                        bottomBorder,
+                        border(borders != null ? borders.getRight() : null, tableBorders == null ? null : column + span == columns.length ? tableBorders.getRight() : tableBorders.getInsideV()));
+                cells.add(box);
+                rowHeight = Math.max(rowHeight, top + contentHeight + bottom);
+                column += span;
+                cellX += cellWidth;
+            }
+            if (height != null && height.getVal() != null) {
+                float specified = twips(height.getVal(), 0);
+                rowHeight = height.getHRule() == STHeightRule.EXACT ? specified : Math.max(rowHeight, specified);
+            }
+            return new RowBox(header, rowHeight, cells);
+        }
+
+        private void draw(RowBox row, float x) throws IOException {
+            for (CellBox cell : row.cells()) {
+                float left = x + cell.x();
+                if (cell.fill() != null) {
+                    canvas.setNonStrokingColor(cell.fill());
+                    canvas.addRect(left, y - row.height(), cell.width(), row.height());
+                    canvas.fill();
+                }
+                float free = row.height() - cell.marginTop() - cell.contentHeight();
+                STVerticalJc alignment = cell.alignment() != null ? cell.alignment().getVal() : STVerticalJc.TOP;
+                float top = y - cell.marginTop() - (alignment == STVerticalJc.CENTER ? free / 2 : alignment == STVerticalJc.BOTTOM ? free : 0);
+                for (Block block : cell.blocks()) {
+                    top -= block.spaceBefore();
+                    for (Line line : block.lines()) {
+                        draw(block, line, left + cell.marginLeft(), top);
+                        top -= line.height();
+                    }
+                    top -= block.spaceAfter();
+                }
+                stroke(cell.top(), left, y, left + cell.width(), y);
+                stroke(cell.bottom(), left, y - row.height(), left + cell.width(), y - row.height());
+                stroke(cell.left(), left, y, left, y - row.height());
+                stroke(cell.right(), left + cell.width(), y, left + cell.width(), y - row.height());
+            }
+            y -= row.height();
+        }
+
+        // drawing
+
+        private void draw(Block block, Line line, float left, float top) throws IOException {
+            float x = left + block.indentLeft() + (line.first() ? block.firstLine() : 0);
+            float available = block.width() - (line.first() ? block.firstLine() : 0);
+            if (block.alignment() == JcEnumeration.CENTER) {
+                x += (available - line.width()) / 2;
+            } else if (block.alignment() == JcEnumeration.RIGHT) {
+                x += available - line.width();
+            }
+            float baseline = top - line.ascent();
+            for (Piece piece : line.pieces()) {
+                if (piece instanceof TextPiece text) {
+                    TextStyle style = text.style();
+                    if (style.highlight() != null) {
+                        canvas.setNonStrokingColor(style.highlight());
+                        canvas.addRect(x, baseline - style.descent(), text.width(), style.ascent() + style.descent());
+                        canvas.fill();
+                    }
+                    canvas.beginText();
+                    canvas.setFont(style.font(), style.size());
+                    canvas.setNonStrokingColor(style.color());
+                    canvas.newLineAtOffset(x, baseline + style.rise());
+                    canvas.showText(text.text());
+                    canvas.endText();
+                    if (style.underline()) {
+                        line(style.color(), style.size() / 20, x, baseline + style.rise() - style.size() / 10, x + text.width());
+                    }
+                    if (style.strike()) {
+                        line(style.color(), style.size() / 20, x, baseline + style.rise() + style.size() / 4, x + text.width());
+                    }
+                } else if (piece instanceof ImagePiece image) {
+                    canvas.drawImage(image.image(), x, baseline, image.width(), image.height());
+                }
+                x += piece.width();
+            }
+        }
+
+        private void line(Color color, float width, float x1, float y1, float x2) throws IOException {
+            canvas.setStrokingColor(color);
+            canvas.setLineWidth(width);
+            canvas.moveTo(x1, y1);
+            canvas.lineTo(x2, y1);
+            canvas.stroke();
+        }
+
+        private void stroke(BorderLine border, float x1, float y1, float x2, float y2) throws IOException {
+            if (border != null) {
+                canvas.setStrokingColor(border.color());
+                canvas.setLineWidth(border.width());
+                canvas.moveTo(x1, y1);
+                canvas.lineTo(x2, y2);
+                canvas.stroke();
+            }
+        }
+
+        /**
+         * Collects a paragraph's text, tabs, breaks and images into lines, wrapping at spaces, tabs and after
+         * hyphens between letters, as FOP does. A word can run over several runs; it only breaks inside when it
+         * is wider than a whole line.
+         */
+        private class LineBreaker {
+            private final PPr properties;
+            private final float width;
+            private final float firstLine;
+            private final TextStyle markStyle;
+            private final List<Line> lines = new ArrayList<>();
+            private final List<Piece> word = new ArrayList<>();
+            private List<Piece> pieces = new ArrayList<>();
+            private float lineWidth;
+            private float trailingSpace;
+            private float wordWidth;
+
+            LineBreaker(PPr properties, float width, float firstLine, TextStyle markStyle) {
+                this.properties = properties;
+                this.width = width;
+                this.firstLine = firstLine;
+                this.markStyle = markStyle;
+            }
+
+            void text(String value, TextStyle style) throws UnsupportedContentException {
+                String text = style.caps() ? value.toUpperCase(Locale.ROOT) : value;
+                int start = 0;
+                for (int i = 0; i <= text.length(); i++) {
+                    char c = i < text.length() ? text.charAt(i) : ' ';
+                    // line feeds and other control characters in the data are set as spaces, like FOP does
+                    if (c <= ' ' || i == text.length()) {
+                        if (i > start) {
+                            addToWord(text.substring(start, i), style);
+                        }
+                        if (i < text.length()) {
+                            endWord();
+                            append(new TextPiece(" ", style, style.width(" ")), true);
+                        }
+                        start = i + 1;
+                    } else if (c == '-' && i > start && i + 1 < text.length() && Character.isLetter(text.charAt(i + 1))) {
+                        addToWord(text.substring(start, i + 1), style);
+                        endWord();
+                        start = i + 1;
+                    }
+                }
+            }
+
+            /**
+             * No-break spaces keep the word together but are set as spaces, FOP doesn't draw them either.
+             */
+            private void addToWord(String part, TextStyle style) throws UnsupportedContentException {
+                String text = part.replace('\u00A0', ' ');
+                wordWidth += add(word, text, style, style.width(text));
+            }
+
+            void tab(TextStyle style) {
+                endWord();
+                float position = (lines.isEmpty() ? firstLine : 0) + lineWidth;
+                float advance = (float) (Math.floor(position / tabStop) + 1) * tabStop - position;
+                append(new TextPiece("", style, Math.min(advance, Math.max(0, available() - lineWidth))), true);
+            }
+
+            void image(PDImageXObject image, float imageWidth, float imageHeight) {
+                endWord();
+                word.add(new ImagePiece(image, imageWidth, imageHeight));
+                wordWidth = imageWidth;
+                endWord();
+            }
+
+            void lineBreak(boolean page) {
+                endWord();
+                newLine(page);
+            }
+
+            List<Line> finish() {
+                endWord();
+                if (!pieces.isEmpty() || lines.isEmpty()) {
+                    newLine(false);
+                }
+                return lines;
+            }
+
+            private void endWord() {
+                if (word.isEmpty()) {
+                    return;
+                }
+                if (lineWidth - trailingSpace + (trailingSpace + wordWidth) > available() && hasContent()) {
+                    newLine(false);
+                }
+                if (wordWidth > available() && !hasContent()) {
+                    splitWord();
+                } else {
+                    word.forEach(piece -> append(piece, false));
+                }
+                word.clear();
+                wordWidth = 0;
+            }
+
+            /**
+             * Breaks a word wider than the line between characters.
+             */
+            private void splitWord() {
+                for (Piece piece : word) {
+                    if (!(piece instanceof TextPiece text)) {
+                        append(piece, false);
+                        continue;
+                    }
+                    for (int i = 0; i < text.text().length(); ) {
+                        int end = text.text().offsetByCodePoints(i, 1);
+                        String character = text.text().substring(i, end);
+                        float characterWidth = text.style().measure(character);
+                        if (lineWidth + characterWidth > available() && hasContent()) {
+                            newLine(false);
+                        }
+                        append(new TextPiece(character, text.style(), characterWidth), false);
+                        i = end;
+                    }
+                }
+            }
+
+            private float add(List<Piece> target, String text, TextStyle style, float textWidth) {
+                if (!target.isEmpty() && target.get(target.size() - 1) instanceof TextPiece last && last.style() == style) {
+                    target.set(target.size() - 1, new TextPiece(last.text() + text, style, last.width() + textWidth));
+                } else {
+                    target.add(new TextPiece(text, style, textWidth));
+                }
+                return textWidth;
+            }
+
+            private void append(Piece piece, boolean space) {
+                if (piece instanceof TextPiece text) {
+                    add(pieces, text.text(), text.style(), text.width());
+                } else {
+                    pieces.add(piece);
+                }
+                lineWidth += piece.width();
+                trailingSpace = space ? trailingSpace + piece.width() : 0;
+            }
+
+            private boolean hasContent() {
+                return lineWidth - trailingSpace > 0 || pieces.stream().anyMatch(ImagePiece.class::isInstance);
+            }
+
+            private float available() {
+                return width - (lines.isEmpty() ? firstLine : 0);
+            }
+
+            private void newLine(boolean pageBreakAfter) {
+                // trailing spaces hang past the margin and don't count for alignment
+                if (!pieces.isEmpty() && pieces.get(pieces.size() - 1) instanceof TextPiece last && trailingSpace > 0) {
+                    String text = last.text().stripTrailing();
+                    pieces.set(pieces.size() - 1, new TextPiece(text, last.style(), last.style().measure(text)));
+                }
+                float visibleWidth = 0;
+                float ascent = 0;
+                float descent = 0;
+                float size = 0;
+                float imageHeight = 0;
+                for (Piece piece : pieces) {
+                    visibleWidth += piece.width();
+                    if (piece instanceof TextPiece text) {
+                        ascent = Math.max(ascent, text.style().ascent() + Math.max(0, text.style().rise()));
+                        descent = Math.max(descent, text.style().descent() - Math.min(0, text.style().rise()));
+                        size = Math.max(size, text.style().size());
+                    } else {
+                        imageHeight = Math.max(imageHeight, piece.height());
+                    }
+                }
+                if (size == 0 && imageHeight == 0) {
+                    ascent = markStyle != null ? markStyle.ascent() : DEFAULT_FONT_SIZE * 0.8f;
+                    descent = markStyle != null ? markStyle.descent() : DEFAULT_FONT_SIZE * 0.2f;
+                    size = markStyle != null ? markStyle.size() : DEFAULT_FONT_SIZE;
+                }
+                // like XSL-FO, the leading (which can be negative) is split above and below the text,
+                // and an image standing on the baseline makes the line taller
+                float height = size > 0 ? lineHeight(size) : 0;
+                float baseline = size > 0 ? (height - ascent - descent) / 2 + ascent : 0;
+                if (imageHeight > baseline) {
+                    height += imageHeight - baseline;
+                    baseline = imageHeight;
+                }
+                lines.add(new Line(lines.isEmpty(), pieces, visibleWidth, baseline, height, pageBreakAfter));
+                pieces = new ArrayList<>();
+                lineWidth = 0;
+                trailingSpace = 0;
+            }
+
+            private float lineHeight(float size) {
+                float natural = size * NORMAL_LINE_HEIGHT;
+                PPrBase.Spacing spacing = properties.getSpacing();
+                if (spacing == null || spacing.getLine() == null) {
+                    return natural;
+                }
+                float line = spacing.getLine().floatValue();
+                STLineSpacingRule rule = spacing.getLineRule();
+                if (rule == STLineSpacingRule.EXACT) {
+                    return line / TWIPS_PER_POINT;
+                } else if (rule == STLineSpacingRule.AT_LEAST) {
+                    return Math.max(natural, line / TWIPS_PER_POINT);
+                }
+                return size * line / 240;
+            }
+        }
+    }
+
+    private static boolean isMarker(Object element) {
+        return element instanceof CTBookmark || element instanceof CTMarkupRange || element instanceof ProofErr
+                || element instanceof CommentRangeStart || element instanceof CommentRangeEnd;
+    }
+
+    private static UnsupportedContentException unsupported(Object item) {
+        String name = item instanceof JAXBElement<?> element ? "w:" + element.getName().getLocalPart()
+                : XmlUtils.unwrap(item).getClass().getSimpleName();
+        return new UnsupportedContentException(name);
+    }
+
+    private static JcEnumeration alignment(PPr properties) {
+        JcEnumeration alignment = properties.getJc() != null ? properties.getJc().getVal() : JcEnumeration.LEFT;
+        return alignment == JcEnumeration.CENTER || alignment == JcEnumeration.RIGHT ? alignment : JcEnumeration.LEFT;
+    }
+
+    private static PDFont standardFont(String name, boolean bold, boolean italic) {
+        String family = name != null ? name.toLowerCase(Locale.ROOT) : "";
+        if (family.contains("courier") || family.contains("mono")) {
+            return bold ? italic ? PDType1Font.COURIER_BOLD_OBLIQUE : PDType1Font.COURIER_BOLD
+                    : italic ? PDType1Font.COURIER_OBLIQUE : PDType1Font.COURIER;
+        } else if (family.contains("helvetica") || family.contains("arial") || family.contains("sans")) {
+            return bold ? italic ? PDType1Font.HELVETICA_BOLD_OBLIQUE : PDType1Font.HELVETICA_BOLD
+                    : italic ? PDType1Font.HELVETICA_OBLIQUE : PDType1Font.HELVETICA;
+        }
+        return bold ? italic ? PDType1Font.TIMES_BOLD_ITALIC : PDType1Font.TIMES_BOLD
+                : italic ? PDType1Font.TIMES_ITALIC : PDType1Font.TIMES_ROMAN;
+    }
+
+    private static BorderLine border(CTBorder cellBorder, CTBorder tableBorder) {
+        CTBorder border = cellBorder != null ? cellBorder : tableBorder;
+        if (border == null || border.getVal() == null || border.getVal() == STBorder.NONE || border.getVal() == STBorder.NIL) {
+            return null;
+        }
+        float width = border.getSz() != null ? border.getSz().floatValue() / 8 : 0.5f;
+        Color color = color(border.getColor());
+        return new BorderLine(Math.max(width, 0.25f), color);
+    }
+
+    private static Color fill(CTShd shading) {
+        if (shading == null) {
+            return null;
+        }
+        Color fill = shading.getFill() != null && !shading.getFill().equals("auto") ? color(shading.getFill()) : null;
+        return shading.getVal() != null && shading.getVal().value().equals("solid") ? color(shading.getColor()) : fill;
+    }
+
+    private static Color color(String hex) {
+        if (hex == null || hex.equals("auto") || hex.length() != 6) {
+            return Color.BLACK;
+        }
+        try {
+            return new Color(Integer.parseInt(hex, 16));
+        } catch (NumberFormatException e) {
+            return Color.BLACK;
+        }
+    }
+
+    private static float margin(TblWidth cell, TblWidth table, float fallback) {
+        return width(cell, width(table, fallback));
+    }
+
+    private static float width(TblWidth width, float fallback) {
+        if (width == null || width.getW() == null) {
+            return fallback;
+        } else if ("nil".equals(width.getType())) {
+            return 0;
+        }
+        return width.getType() == null || width.getType().equals("dxa") ? twips(width.getW(), fallback) : fallback;
+    }
+
+    // docx4j's XSL-FO puts the page margin at the header or footer distance, rounded the way
+    // UnitsOfMeasurement.twipToBest rounds it, and the body a whole number of points further in
+    private static float bodyMargin(BigInteger margin, BigInteger distance) {
+        int twips = Math.abs(margin != null ? margin.intValue() : 1440);
+        int edge = distance != null ? distance.intValue() : DEFAULT_HEADER_DISTANCE;
+        float inches = edge / 1440f;
+        float edgePoints = Math.round(inches * 80) == Math.round(inches * 80 + 0.49f)
+                ? Math.round(inches * 100) / 100f * 72
+                : Math.round(inches / 0.0394f) * 72 / 25.4f;
+        return edgePoints + (twips - edge) / (int) TWIPS_PER_POINT;
+    }
+
+    private static float twips(BigInteger value, float fallback) {
+        return value != null ? value.floatValue() / TWIPS_PER_POINT : fallback;
+    }
+
+    private static boolean isOn(BooleanDefaultTrue value) {
+        return value != null && value.isVal();
+    }
+
+    private record StyleKey(RPr rPr, PPr pPr) {
+    }
+
+    private record ParagraphKey(PPr pPr, PPr tableParagraph) {
+    }
+
+    private record TableProperties(TblBorders borders, CTTblCellMar cellMargins, CTShd shading, PPr paragraph) {
+    }
+
+    /**
+     * A laid out paragraph, positioned by whoever places it.
+     */
+    private record Block(float spaceBefore, float spaceAfter, float indentLeft, float firstLine, float width,
+                         JcEnumeration alignment, boolean pageBreakBefore, List<Line> lines) {
+        Block withSpacing(float before, float after) {
+            return new Block(before, after, indentLeft, firstLine, width, alignment, pageBreakBefore, lines);
+        }
+
+        float height() {
+            float height = spaceBefore + spaceAfter;
+            for (Line line : lines) {
+                height += line.height();
+            }
+            return height;
+        }
+    }
+
+    private record Line(boolean first, List<Piece> pieces, float width, float ascent, float height, boolean pageBreakAfter) {
+    }
+
+    private sealed interface Piece permits TextPiece, ImagePiece {
+        float width();
+
+        float height();
+    }
+
+    private record TextPiece(String text, TextStyle style, float width) implements Piece {
+        @Override
+        public float height() {
+            return style.lineHeight();
+        }
+    }
+
+    private record ImagePiece(PDImageXObject image, float width, float height) implements Piece {
+    }
+
+    private record TextStyle(PDFont font, float size, float rise, Color color, Color highlight, boolean underline,
+                             boolean strike, boolean caps) {
+        float ascent() {
+            PDFontDescriptor descriptor = font.getFontDescriptor();
+            return descriptor != null && descriptor.getAscent() > 0 ? descriptor.getAscent() / 1000 * size : size * 0.8f;
+        }
+
+        float descent() {
+            PDFontDescriptor descriptor = font.getFontDescriptor();
+            return descriptor != null && descriptor.getDescent() < 0 ? -descriptor.getDescent() / 1000 * size : size * 0.2f;
+        }
+
+        float lineHeight() {
+            return size * NORMAL_LINE_HEIGHT;
+        }
+
+        float width(String text) throws UnsupportedContentException {
+            try {
+                return font.getStringWidth(text) / 1000 * size;
+            } catch (IllegalArgumentException | IOException e) {
+                throw new UnsupportedContentException("text the font can't show: " + e.getMessage());
+            }
+        }
+
+        /**
+         * The width of text already known to be in the font.
+         */
+        float measure(String text) {
+            try {
+                return width(text);
+            } catch (UnsupportedContentException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private record BorderLine(float width, Color color) {
+    }
+
+    private record CellBox(float x, float width, float marginTop, float marginLeft, List<Block> blocks,
+                           float contentHeight, CTVerticalJc alignment, Color fill, BorderLine top, BorderLine left,
+                           BorderLine bottom, BorderLine right) {
+    }
+
+    private record RowBox(boolean header, float height, List<CellBox> cells) {
+    }
+}
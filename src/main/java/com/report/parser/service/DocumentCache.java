@@ -0,0 +1,174 @@
+package com.report.parser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.report.parser.config.ReportProperties;
+import lombok.extern.log4j.Log4j2;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prepared reports kept after export with their fields filled in and their table emptied again, keyed by
+ * the template version and the field values. A report with the same key starts from the kept document
+ * and only has its table rows written, skipping the template copy, text and images. A document is taken
+ * out while a report is built on it and put back once that report is exported, so reports never share one.
+ * A kept document holds part of the render memory of the export that kept it, and gives it back when an
+ * export would otherwise wait for memory.
+ */
+@Service
+@Log4j2
+public class DocumentCache {
+    private static final String TABLE_DATA = "tableData";
+
+    private final ReportProperties reportProperties;
+    // map keys sorted at every level, so equal fields always serialize to the same bytes
+    private final ObjectMapper canonicalMapper = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    // access ordered, so the eldest entry is the least recently used
+    private final Map<String, Kept> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DocumentCache(ReportProperties reportProperties, RenderMemory renderMemory) {
+        this.reportProperties = reportProperties;
+        renderMemory.reclaimWith(this::evictEldest);
+    }
+
+    /**
+     * Hash of the template version and every field but the table rows.
+     *
+     * @param templateVersion changes whenever the template, its columns or its images do
+     */
+    public String key(String templateVersion, Map<String, Object> fields) throws Exception {
+        Map<String, Object> staticFields = new HashMap<>(fields);
+        staticFields.remove(TABLE_DATA);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(templateVersion.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(canonicalMapper.writeValueAsBytes(staticFields));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public boolean isEnabled() {
+        return reportProperties.getDocumentCache().isEnabled();
+    }
+
+    /**
+     * Takes the kept document for the key out of the cache.
+     */
+    public Optional<Entry> checkOut(String key) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        Kept kept;
+        synchronized (entries) {
+            kept = entries.remove(key);
+        }
+        (kept != null ? hits : misses).incrementAndGet();
+        if (kept == null) {
+            return Optional.empty();
+        }
+        // the export of the report built on it reserves memory for it from here on
+        kept.memory().close();
+        return Optional.of(kept.entry());
+    }
+
+    /**
+     * Marks a document, built for the key or checked out, to be kept once its report is exported.
+     *
+     * @param tableWriter the writer for the document's table, null if it has none
+     * @param rows the rows written into the table, taken out again before the document is kept
+     * @return what {@link #checkIn(Pending, RenderMemory.Reservation)} needs once the report is exported, null if nothing is kept
+     */
+    public Pending track(WordprocessingMLPackage wordMLPackage, String key, TableWriter tableWriter, int rows) {
+        return isEnabled() ? new Pending(wordMLPackage, key, tableWriter, rows) : null;
+    }
+
+    /**
+     * Keeps the document of an exported report, if it was tracked, moving its share of render memory out of
+     * the export's reservation. A newer document for the same key replaces the kept one.
+     */
+    public void checkIn(Pending document, RenderMemory.Reservation exportMemory) {
+        if (document == null) {
+            return;
+        }
+        if (document.tableWriter() != null) {
+            document.tableWriter().reset(document.rows());
+        }
+        Kept kept = new Kept(new Entry(document.document(), document.tableWriter()),
+                exportMemory.keep(reportProperties.getDocumentCache().getEntryBytes()));
+        synchronized (entries) {
+            Kept replaced = entries.put(document.key(), kept);
+            if (replaced != null) {
+                replaced.memory().close();
+            }
+            evictOverflow();
+        }
+    }
+
+    public Stats getStats() {
+        synchronized (entries) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(),
+                    reportProperties.getDocumentCache().getMaxEntries());
+        }
+    }
+
+    private void evictOverflow() {
+        int maxEntries = Math.max(0, reportProperties.getDocumentCache().getMaxEntries());
+        while (entries.size() > maxEntries) {
+            evictEldestLocked();
+        }
+    }
+
+    /**
+     * Drops the least recently used document to give its memory back.
+     *
+     * @return false if nothing was kept
+     */
+    private boolean evictEldest() {
+        synchronized (entries) {
+            if (entries.isEmpty()) {
+                return false;
+            }
+            evictEldestLocked();
+            return true;
+        }
+    }
+
+    private void evictEldestLocked() {
+        var iterator = entries.entrySet().iterator();
+        Map.Entry<String, Kept> eldest = iterator.next();
+        iterator.remove();
+        eldest.getValue().memory().close();
+        evictions.incrementAndGet();
+        log.debug("Evicted prepared document {}", eldest.getKey());
+    }
+
+    /**
+     * A kept document with its fields filled in, and the writer for its table.
+     */
+    public record Entry(WordprocessingMLPackage document, TableWriter tableWriter) {
+    }
+
+    private record Kept(Entry entry, RenderMemory.Reservation memory) {
+    }
+
+    /**
+     * A document out for a report, to be kept under its key once the report is exported.
+     */
+    public record Pending(WordprocessingMLPackage document, String key, TableWriter tableWriter, int rows) {
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size, int maxEntries) {
+    }
+}
@@ -0,0 +1,340 @@
+package com.report.parser.service;
+
+import jakarta.xml.bind.JAXBElement;
+import org.docx4j.XmlUtils;
+import org.docx4j.jaxb.Context;
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+import org.docx4j.wml.Body;
+import org.docx4j.wml.CTRel;
+import org.docx4j.wml.Document;
+import org.docx4j.wml.FooterReference;
+import org.docx4j.wml.HeaderReference;
+import org.docx4j.wml.P;
+import org.docx4j.wml.SectPr;
+import org.docx4j.wml.Tbl;
+import org.docx4j.wml.Tr;
+import org.docx4j.wml.TrPr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Cuts a prepared report into pieces whose XSL-FO can be generated on their own. Parts end at section
+ * breaks, where the FO starts a new page sequence anyway. Within a part, tables with more rows than the
+ * chunk size are cut into pieces, and {@link #join(List)} puts the pieces' FO back into one table before
+ * layout, so the report breaks its pages exactly where it would in one piece. The report itself is left
+ * as it is: every piece is saved from a copy of its share of the body, with only the package parts it
+ * refers to.
+ */
+final class DocumentSplitter {
+    private static final String PACKAGE_RELATIONSHIPS = "_rels/.rels";
+    private static final String CONTENT_TYPES = "[Content_Types].xml";
+    private static final String RELATIONSHIP_TYPES = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/";
+    // parts the main document only reaches through an r:id in its content
+    private static final Set<String> REFERENCED_TYPES = Set.of(
+            RELATIONSHIP_TYPES + "image", RELATIONSHIP_TYPES + "header", RELATIONSHIP_TYPES + "footer");
+    private static final Pattern RELATIONSHIP = Pattern.compile("<Relationship\\b[^>]*>");
+    private static final Pattern TABLE_TAG = Pattern.compile("<(/?)(?:fo:)?table(-body)?[\\s/>]");
+
+    private DocumentSplitter() {
+    }
+
+    /**
+     * @return the parts in document order, each as the saved packages of its pieces, or an empty list if
+     * the report is one piece
+     */
+    static List<List<byte[]>> split(WordprocessingMLPackage wordMLPackage, int chunkRows) throws Docx4JException, IOException {
+        MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+        Document document = documentPart.getContents();
+        List<Part> parts = cut(document.getBody(), Math.max(1, chunkRows));
+        if (parts.size() < 2 && parts.get(0).pieces().size() < 2) {
+            return List.of();
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        wordMLPackage.save(outputStream);
+        Map<String, byte[]> entries = entries(outputStream.toByteArray());
+        String documentEntry = documentPart.getPartName().getName().substring(1);
+        List<List<byte[]>> savedParts = new ArrayList<>(parts.size());
+        for (Part part : parts) {
+            List<byte[]> savedPieces = new ArrayList<>(part.pieces().size());
+            for (Piece piece : part.pieces()) {
+                savedPieces.add(save(entries, documentEntry, document, piece));
+            }
+            savedParts.add(savedPieces);
+        }
+        return savedParts;
+    }
+
+    static List<Part> cut(Body body, int chunkRows) {
+        List<Part> parts = new ArrayList<>();
+        Section section = new Section();
+        for (Object item : body.getContent()) {
+            Object element = XmlUtils.unwrap(item);
+            if (element instanceof Tbl table && table.getContent().size() - headerRows(table) > chunkRows) {
+                List<Tbl> chunks = chunk(table, chunkRows);
+                section.add(chunks.get(0));
+                chunks.subList(1, chunks.size()).forEach(section::continueWith);
+            } else if (element instanceof P paragraph && paragraph.getPPr() != null && paragraph.getPPr().getSectPr() != null) {
+                // the section's properties move to the part; docx4j lays the paragraph itself out at the start
+                // of the next page sequence, so it goes there
+                P sectionParagraph = XmlUtils.deepCopy(paragraph);
+                sectionParagraph.getPPr().setSectPr(null);
+                parts.add(section.close(paragraph.getPPr().getSectPr()));
+                section = section.next();
+                section.add(sectionParagraph);
+            } else {
+                section.add(item);
+            }
+        }
+        parts.add(section.close(body.getSectPr()));
+        return parts;
+    }
+
+    /**
+     * Joins the FO of a part's pieces: the rows of the table each piece starts with go into the table the
+     * piece before ends with, and whatever follows that table goes after it.
+     */
+    static String join(List<String> foDocuments) {
+        StringBuilder joined = new StringBuilder(foDocuments.get(0));
+        for (String fo : foDocuments.subList(1, foDocuments.size())) {
+            int flowEnd = fo.lastIndexOf("</fo:flow>");
+            Matcher tags = TABLE_TAG.matcher(fo);
+            tags.region(fo.indexOf("<fo:flow"), flowEnd);
+            int depth = 0;
+            int rowsStart = -1;
+            int rowsEnd = -1;
+            while (tags.find()) {
+                boolean closing = !tags.group(1).isEmpty();
+                if (tags.group(2) == null) {
+                    depth += closing ? -1 : 1;
+                    if (depth == 0) {
+                        break;
+                    }
+                } else if (depth == 1 && closing) {
+                    rowsEnd = tags.start();
+                } else if (depth == 1 && rowsStart < 0) {
+                    rowsStart = fo.indexOf('>', tags.start()) + 1;
+                }
+            }
+            if (rowsStart < 0 || rowsEnd < 0 || depth != 0) {
+                throw new IllegalStateException("Piece doesn't start with the rest of a table");
+            }
+            joined.insert(joined.lastIndexOf("</fo:table-body>"), fo, rowsStart, rowsEnd);
+            joined.insert(joined.lastIndexOf("</fo:flow>"), fo, tags.end(), flowEnd);
+        }
+        return joined.toString();
+    }
+
+    private static List<Tbl> chunk(Tbl table, int chunkRows) {
+        List<Object> rows = table.getContent();
+        int headerRows = headerRows(table);
+        List<Tbl> chunks = new ArrayList<>();
+        for (int start = headerRows; start < rows.size(); start += chunkRows) {
+            Tbl chunk = new Tbl();
+            chunk.setTblPr(table.getTblPr());
+            chunk.setTblGrid(table.getTblGrid());
+            if (start == headerRows) {
+                chunk.getContent().addAll(rows.subList(0, headerRows));
+            }
+            chunk.getContent().addAll(rows.subList(start, Math.min(rows.size(), start + chunkRows)));
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * The leading rows Word repeats at the top of every page the table runs over. Only the first chunk
+     * keeps them, the others only add rows to its table body.
+     */
+    private static int headerRows(Tbl table) {
+        int headerRows = 0;
+        for (Object item : table.getContent()) {
+            if (!(XmlUtils.unwrap(item) instanceof Tr row) || !isHeader(row.getTrPr())) {
+                break;
+            }
+            headerRows++;
+        }
+        return headerRows;
+    }
+
+    private static boolean isHeader(TrPr rowProperties) {
+        return rowProperties != null && rowProperties.getCnfStyleOrDivIdOrGridBefore().stream()
+                .map(JAXBElement::getName)
+                .anyMatch(name -> name.getLocalPart().equals("tblHeader"));
+    }
+
+    /**
+     * The report's package with the piece's document, and without the images, headers and footers only the
+     * rest of the report refers to.
+     */
+    private static byte[] save(Map<String, byte[]> entries, String documentEntry, Document document, Piece piece) throws IOException {
+        Document pieceDocument = new Document();
+        pieceDocument.setIgnorable(document.getIgnorable());
+        pieceDocument.setBackground(document.getBackground());
+        Body body = new Body();
+        body.getContent().addAll(piece.content());
+        body.setSectPr(piece.sectPr());
+        pieceDocument.setBody(body);
+        // declares the namespaces the document's mc:Ignorable lists, as saving the document part would
+        String content = XmlUtils.marshaltoString(pieceDocument, false, false, Context.jc);
+
+        Map<String, byte[]> pieceEntries = new LinkedHashMap<>(entries);
+        pieceEntries.put(documentEntry, content.getBytes(StandardCharsets.UTF_8));
+        String relationshipsEntry = relationshipsOf(documentEntry);
+        String relationships = new String(entries.get(relationshipsEntry), StandardCharsets.UTF_8);
+        pieceEntries.put(relationshipsEntry, RELATIONSHIP.matcher(relationships).replaceAll(relationship ->
+                REFERENCED_TYPES.contains(attribute(relationship.group(), "Type"))
+                        && !content.contains('"' + attribute(relationship.group(), "Id") + '"')
+                        ? "" : Matcher.quoteReplacement(relationship.group())).getBytes(StandardCharsets.UTF_8));
+        pieceEntries.keySet().retainAll(reachable(pieceEntries));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(outputStream)) {
+            for (Map.Entry<String, byte[]> entry : pieceEntries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static Map<String, byte[]> entries(byte[] savedPackage) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(savedPackage))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * The entries the package relationships lead to, with their relationships and the content types.
+     */
+    private static Set<String> reachable(Map<String, byte[]> entries) throws IOException {
+        Set<String> reachable = new HashSet<>(Set.of(CONTENT_TYPES, PACKAGE_RELATIONSHIPS));
+        Deque<String> relationshipParts = new ArrayDeque<>(List.of(PACKAGE_RELATIONSHIPS));
+        while (!relationshipParts.isEmpty()) {
+            String relationshipPart = relationshipParts.pop();
+            // _rels/.rels belongs to the package root, word/_rels/document.xml.rels to word/document.xml
+            String source = relationshipPart.replaceFirst("_rels/([^/]*)\\.rels$", "$1");
+            Matcher relationships = RELATIONSHIP.matcher(new String(entries.get(relationshipPart), StandardCharsets.UTF_8));
+            while (relationships.find()) {
+                if ("External".equals(attribute(relationships.group(), "TargetMode"))) {
+                    continue;
+                }
+                String target = resolve(source, attribute(relationships.group(), "Target"));
+                String targetRelationships = relationshipsOf(target);
+                if (reachable.add(target) && entries.containsKey(targetRelationships) && reachable.add(targetRelationships)) {
+                    relationshipParts.push(targetRelationships);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    private static String relationshipsOf(String entry) {
+        return entry.replaceFirst("([^/]*)$", "_rels/$1.rels");
+    }
+
+    private static String resolve(String source, String target) throws IOException {
+        try {
+            return new URI(null, null, "/" + source, null).resolve(new URI(null, null, target, null)).getPath().substring(1);
+        } catch (URISyntaxException e) {
+            throw new IOException("Unable to resolve part " + target, e);
+        }
+    }
+
+    private static String attribute(String element, String name) {
+        Matcher value = Pattern.compile("\\b" + name + "=\"([^\"]*)\"").matcher(element);
+        return value.find() ? value.group(1).replace("&quot;", "\"").replace("&apos;", "'")
+                .replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&") : null;
+    }
+
+    record Part(List<Piece> pieces) {
+    }
+
+    /**
+     * A share of a part's body. Every piece after the part's first starts with the rest of the table the
+     * piece before ends with.
+     */
+    record Piece(List<Object> content, SectPr sectPr) {
+    }
+
+    /**
+     * The pieces of one section while it is being cut. Headers and footers a section doesn't define are
+     * inherited from the one before, which a part rendered on its own can't see, so they are copied in.
+     */
+    private static final class Section {
+        private final List<CTRel> headers;
+        private final List<CTRel> footers;
+        private final List<List<Object>> contents = new ArrayList<>();
+        private List<CTRel> sectionHeaders;
+        private List<CTRel> sectionFooters;
+
+        Section() {
+            this(List.of(), List.of());
+        }
+
+        private Section(List<CTRel> headers, List<CTRel> footers) {
+            this.headers = headers;
+            this.footers = footers;
+            contents.add(new ArrayList<>());
+        }
+
+        void add(Object item) {
+            contents.get(contents.size() - 1).add(item);
+        }
+
+        void continueWith(Tbl chunk) {
+            contents.add(new ArrayList<>());
+            add(chunk);
+        }
+
+        Part close(SectPr sectPr) {
+            SectPr sectionProperties = sectPr != null ? XmlUtils.deepCopy(sectPr) : new SectPr();
+            List<CTRel> references = sectionProperties.getEGHdrFtrReferences();
+            sectionHeaders = references.stream().anyMatch(HeaderReference.class::isInstance)
+                    ? references.stream().filter(HeaderReference.class::isInstance).toList() : headers;
+            sectionFooters = references.stream().anyMatch(FooterReference.class::isInstance)
+                    ? references.stream().filter(FooterReference.class::isInstance).toList() : footers;
+            references.clear();
+            references.addAll(sectionHeaders);
+            references.addAll(sectionFooters);
+
+            // only the first piece's page sequence is laid out, the others need neither headers nor footers
+            SectPr continuationProperties = XmlUtils.deepCopy(sectionProperties);
+            continuationProperties.getEGHdrFtrReferences().clear();
+            continuationProperties.setTitlePg(null);
+            List<Piece> pieces = new ArrayList<>(contents.size());
+            for (int i = 0; i < contents.size(); i++) {
+                pieces.add(new Piece(contents.get(i), i == 0 ? sectionProperties : continuationProperties));
+            }
+            return new Part(pieces);
+        }
+
+        Section next() {
+            return new Section(sectionHeaders, sectionFooters);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.fop.apps.FopFactory;
+import org.docx4j.Docx4J;
+import org.docx4j.convert.out.FOSettings;
+import org.docx4j.convert.out.fo.renderers.FORendererApacheFOP;
+import org.docx4j.convert.out.fopconf.Fop;
+import org.docx4j.fonts.Mapper;
+import org.docx4j.fonts.PhysicalFont;
+import org.docx4j.fonts.PhysicalFonts;
+import org.docx4j.fonts.fop.util.FopConfigUtil;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.wml.Fonts;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Physical fonts, discovered once, and the font mapping every report shares. Fonts are resolved when a
+ * template is compiled; renders only read the mapping and reuse one FOP factory configured for all of them.
+ */
+@Service
+@Log4j2
+@RequiredArgsConstructor
+public class FontRegistry {
+    private final ReportProperties reportProperties;
+    private final Mapper fontMapper = new RegistryMapper();
+
+    private final Set<String> fontsInUse = new HashSet<>();
+    private boolean discovered;
+    private volatile FopSetup fopSetup;
+
+    /**
+     * Scans the system and configured font directories. Only the first call does any work.
+     */
+    public synchronized void discover() throws Exception {
+        if (discovered) {
+            return;
+        }
+        ReportProperties.Fonts config = reportProperties.getFonts();
+        long start = System.nanoTime();
+        if (config.getRegex() != null) {
+            PhysicalFonts.setRegex(config.getRegex());
+        }
+        PhysicalFonts.discoverPhysicalFonts();
+        int fontFiles = 0;
+        for (Path directory : config.getDirectories()) {
+            fontFiles += addFonts(directory);
+        }
+        discovered = true;
+        log.info("Discovered system fonts and {} font files from configured directories in {}ms", fontFiles,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Maps the fonts a template uses and adds them to the shared FOP configuration if they are new.
+     */
+    public void register(WordprocessingMLPackage wordMLPackage) throws Exception {
+        discover();
+        // also picks up fonts embedded in the template
+        wordMLPackage.setFontMapper(fontMapper, true);
+        Set<String> templateFonts = wordMLPackage.getMainDocumentPart().fontsInUse();
+        synchronized (this) {
+            if (fopSetup != null && fontsInUse.containsAll(templateFonts)) {
+                return;
+            }
+            fontsInUse.addAll(templateFonts);
+            fopSetup = createFopSetup(Set.copyOf(fontsInUse));
+        }
+    }
+
+    /**
+     * Hands the shared mapping to a report copy. The template already populated it, so nothing is resolved again.
+     */
+    public void applyTo(WordprocessingMLPackage wordMLPackage) throws Exception {
+        wordMLPackage.setFontMapper(fontMapper, false);
+    }
+
+    /**
+     * Export settings that reuse the shared FOP factory instead of configuring a new one per report.
+     */
+    public FOSettings newFoSettings() throws Exception {
+        FopSetup setup = fopSetup;
+        if (setup == null) {
+            synchronized (this) {
+                discover();
+                if (fopSetup == null) {
+                    fopSetup = createFopSetup(Set.copyOf(fontsInUse));
+                }
+                setup = fopSetup;
+            }
+        }
+        FOSettings settings = Docx4J.createFOSettings();
+        // set before the package, so the document isn't scanned for fonts again
+        settings.setFopConfig(setup.config());
+        settings.setApacheFopMime(FOSettings.MIME_PDF);
+        FORendererApacheFOP.getFOUserAgent(settings, setup.factory());
+        return settings;
+    }
+
+    private FopSetup createFopSetup(Set<String> fonts) throws Exception {
+        Fop config = FopConfigUtil.createConfigurationObject(fontMapper, fonts);
+        FOSettings settings = Docx4J.createFOSettings();
+        settings.setFopConfig(config);
+        FopFactory factory = FORendererApacheFOP.getFopFactoryBuilder(settings).build();
+        log.info("Configured FOP for {} fonts", fonts.size());
+        return new FopSetup(config, factory);
+    }
+
+    private PhysicalFont resolve(String fontName) {
+        ReportProperties.Fonts config = reportProperties.getFonts();
+        PhysicalFont font = PhysicalFonts.get(fontName);
+        if (font == null && config.getFallbacks().containsKey(fontName)) {
+            font = PhysicalFonts.get(config.getFallbacks().get(fontName));
+        }
+        if (font == null) {
+            font = PhysicalFonts.get(config.getDefaultFallback());
+        }
+        return font;
+    }
+
+    private static int addFonts(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            log.warn("Font directory {} does not exist", directory);
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            List<Path> fontFiles = files.filter(file -> file.getFileName().toString().toLowerCase().matches(".*\\.(ttf|otf|ttc)"))
+                    .toList();
+            fontFiles.forEach(file -> PhysicalFonts.addPhysicalFonts(null, file.toUri()));
+            return fontFiles.size();
+        }
+    }
+
+    /**
+     * Keeps its mappings to itself, as docx4j's Mapper puts them in one static map every mapper shares. A font
+     * keeps the mapping it first got, so a template reloaded while reports render doesn't change their fonts.
+     */
+    private class RegistryMapper extends Mapper {
+        private final Map<String, PhysicalFont> mappings = new ConcurrentHashMap<>();
+
+        @Override
+        public void populateFontMappings(Set<String> fontNames, Fonts fonts) {
+            for (String fontName : fontNames) {
+                if (get(fontName) == null) {
+                    PhysicalFont font = resolve(fontName);
+                    if (font != null) {
+                        put(fontName, font);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public PhysicalFont get(String fontName) {
+            return mappings.get(fontName.toLowerCase());
+        }
+
+        @Override
+        public void put(String fontName, PhysicalFont font) {
+            mappings.putIfAbsent(fontName.toLowerCase(), font);
+        }
+
+        @Override
+        public int size() {
+            return mappings.size();
+        }
+    }
+
+    private record FopSetup(Fop config, FopFactory factory) {
+    }
+}
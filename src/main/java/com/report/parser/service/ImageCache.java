@@ -0,0 +1,163 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes report images once, scales them down to the size they are shown at and keeps the result by content hash.
+ */
+@Service
+@Log4j2
+@RequiredArgsConstructor
+public class ImageCache {
+    private static final Set<String> SUPPORTED_FORMATS = Set.of("png", "jpeg", "gif", "bmp");
+
+    private final ReportProperties reportProperties;
+
+    // keyed by content hash and target size, access ordered so the eldest entry is the least recently used
+    private final Map<String, ProcessedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Returns the image scaled to cover the target box in pixels, or null when the format can't be decoded here.
+     */
+    public ProcessedImage get(byte[] source, int targetWidth, int targetHeight) throws Exception {
+        return get(ByteBuffer.wrap(source), targetWidth, targetHeight);
+    }
+
+    /**
+     * As {@link #get(byte[], int, int)}, reading the source in place, e.g. an image held outside the heap.
+     */
+    public ProcessedImage get(ByteBuffer source, int targetWidth, int targetHeight) throws Exception {
+        String key = checksum(source) + "@" + targetWidth + "x" + targetHeight;
+        synchronized (images) {
+            ProcessedImage cached = images.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        ProcessedImage processed = process(source, targetWidth, targetHeight);
+        if (processed == null) {
+            return null;
+        }
+        synchronized (images) {
+            ProcessedImage previous = images.put(key, processed);
+            cachedBytes += processed.bytes().length - (previous == null ? 0 : previous.bytes().length);
+            evictOverflow();
+        }
+        return processed;
+    }
+
+    public Stats getStats() {
+        ReportProperties.Images config = reportProperties.getImages();
+        synchronized (images) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), images.size(), cachedBytes,
+                    config.getMaxEntries(), config.getMaxBytes());
+        }
+    }
+
+    private void evictOverflow() {
+        ReportProperties.Images config = reportProperties.getImages();
+        int maxEntries = Math.max(1, config.getMaxEntries());
+        var iterator = images.entrySet().iterator();
+        // the newest entry always stays, even when it is larger than the byte budget on its own
+        while ((images.size() > maxEntries || cachedBytes > config.getMaxBytes()) && images.size() > 1) {
+            Map.Entry<String, ProcessedImage> eldest = iterator.next();
+            iterator.remove();
+            cachedBytes -= eldest.getValue().bytes().length;
+            evictions.incrementAndGet();
+            log.debug("Evicted processed image {}", eldest.getKey());
+        }
+    }
+
+    private ProcessedImage process(ByteBuffer source, int targetWidth, int targetHeight) throws IOException {
+        String format;
+        BufferedImage image;
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(ByteBufferResource.newInputStream(source.duplicate()))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                format = reader.getFormatName().toLowerCase();
+                if (format.equals("jpg")) {
+                    format = "jpeg";
+                }
+                if (!SUPPORTED_FORMATS.contains(format)) {
+                    return null;
+                }
+                reader.setInput(inputStream, true, true);
+                image = reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        double oversampling = Math.max(1, reportProperties.getImages().getOversampling());
+        int width = (int) Math.ceil(targetWidth * oversampling);
+        int height = (int) Math.ceil(targetHeight * oversampling);
+        // never scale up, and keep the source when it has no usable target size
+        if (targetWidth <= 0 || targetHeight <= 0 || (width >= image.getWidth() && height >= image.getHeight())) {
+            byte[] bytes = new byte[source.remaining()];
+            source.duplicate().get(bytes);
+            return new ProcessedImage(bytes, "image/" + format, image.getWidth(), image.getHeight());
+        }
+        width = Math.min(width, image.getWidth());
+        height = Math.min(height, image.getHeight());
+
+        boolean opaqueJpeg = format.equals("jpeg") && !image.getColorModel().hasAlpha();
+        BufferedImage scaled = new BufferedImage(width, height,
+                opaqueJpeg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        String outputFormat = opaqueJpeg ? "jpeg" : "png";
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(scaled, outputFormat, outputStream);
+        log.debug("Scaled image from {}x{} to {}x{}", image.getWidth(), image.getHeight(), width, height);
+        return new ProcessedImage(outputStream.toByteArray(), "image/" + outputFormat, width, height);
+    }
+
+    private static String checksum(ByteBuffer source) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(source.duplicate());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public record ProcessedImage(byte[] bytes, String mimeType, int width, int height) {
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size, long bytes, int maxEntries, long maxBytes) {
+    }
+}
@@ -0,0 +1,301 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.apache.fop.apps.FopFactory;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.docx4j.Docx4J;
+import org.docx4j.convert.out.FORenderer;
+import org.docx4j.convert.out.FOSettings;
+import org.docx4j.convert.out.fo.renderers.FORendererApacheFOP;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renders long reports in pieces on a fork-join pool and merges the PDFs. Generating the FO is what takes
+ * the time and it grows faster than the document, so each piece gets its own FO on its own core. The pieces
+ * of a section are joined into one FO again and laid out as one, so pages break where they would without
+ * the split. Page numbers depend on the sections before, so sections that show them are laid out a second
+ * time from their FO once every page count is known; that is only the FOP layout, a small share of the work.
+ */
+@Service
+@Log4j2
+public class ParallelPdfRenderer {
+    private static final Pattern FIRST_PAGE_SEQUENCE = Pattern.compile("<fo:page-sequence\\b[^>]*>");
+    private static final Pattern INITIAL_PAGE_NUMBER = Pattern.compile("initial-page-number=\"(\\d+)\"");
+    // docx4j writes most FO elements within blocks without the prefix
+    private static final Pattern PAGE_NUMBER = Pattern.compile("<(?:fo:)?page-number[\\s/>]");
+    // NUMPAGES, which within a part would only count the part's pages
+    private static final Pattern LAST_PAGE_CITATION = Pattern.compile("<(?:fo:)?page-number-citation-last\\b[^>]*/>");
+
+    private final ReportProperties reportProperties;
+    private final FontRegistry fontRegistry;
+    private final ForkJoinPool pool;
+
+    public ParallelPdfRenderer(ReportProperties reportProperties, FontRegistry fontRegistry) {
+        this.reportProperties = reportProperties;
+        this.fontRegistry = fontRegistry;
+        this.pool = new ForkJoinPool(reportProperties.getParallelRender().getEffectiveParallelism());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @return false, with nothing written, if parallel rendering is off or the report doesn't split
+     */
+    public boolean write(WordprocessingMLPackage wordMLPackage, OutputStream outputStream) throws Exception {
+        ReportProperties.ParallelRender config = reportProperties.getParallelRender();
+        if (!config.isEnabled()) {
+            return false;
+        }
+        List<List<byte[]>> parts = DocumentSplitter.split(wordMLPackage, config.getChunkRows());
+        if (parts.isEmpty()) {
+            return false;
+        }
+        long start = System.nanoTime();
+        ReportProperties.Memory memory = reportProperties.getMemory();
+        // the FO of every piece refers to the images docx4j writes out, until the last part is laid out
+        Path imageDirectory = SpillBuffer.createDirectory(memory);
+        Queue<RenderedPart> spilled = new ConcurrentLinkedQueue<>();
+        try {
+            List<Callable<FoCapture>> generations = new ArrayList<>();
+            for (List<byte[]> part : parts) {
+                for (byte[] piece : part) {
+                    generations.add(() -> generate(piece, imageDirectory));
+                }
+            }
+            List<FoCapture> pieces = invokeAll(generations);
+
+            List<Callable<RenderedPart>> renders = new ArrayList<>();
+            int firstPiece = 0;
+            for (List<byte[]> part : parts) {
+                List<FoCapture> partPieces = pieces.subList(firstPiece, firstPiece + part.size());
+                renders.add(() -> render(partPieces, spilled));
+                firstPiece += part.size();
+            }
+            List<RenderedPart> rendered = invokeAll(renders);
+
+            int totalPages = rendered.stream().mapToInt(RenderedPart::pages).sum();
+            List<Callable<RenderedPart>> relayouts = new ArrayList<>();
+            int firstPage = 1;
+            for (int i = 0; i < rendered.size(); i++) {
+                RenderedPart part = rendered.get(i);
+                int partFirstPage = part.capture().explicitFirstPage > 0 ? part.capture().explicitFirstPage : firstPage;
+                if (part.needsRelayout(partFirstPage, totalPages)) {
+                    int index = i;
+                    relayouts.add(() -> {
+                        rendered.set(index, keep(spilled, part.relayout(partFirstPage, totalPages)));
+                        return null;
+                    });
+                }
+                firstPage = partFirstPage + part.pages();
+            }
+            invokeAll(relayouts);
+
+            PDFMergerUtility merger = new PDFMergerUtility();
+            for (RenderedPart part : rendered) {
+                merger.addSource(part.pdf().inputStream());
+            }
+            merger.setDestinationStream(outputStream);
+            merger.mergeDocuments(SpillBuffer.memoryUsage(memory));
+            log.debug("Rendered {} parts from {} pieces with {} pages in {}ms, {} laid out again", parts.size(), pieces.size(),
+                    totalPages, (System.nanoTime() - start) / 1_000_000, relayouts.size());
+            return true;
+        } finally {
+            for (RenderedPart part : spilled) {
+                part.close();
+            }
+            SpillBuffer.deleteDirectory(imageDirectory);
+        }
+    }
+
+    private FoCapture generate(byte[] piece, Path imageDirectory) throws Exception {
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.load(new ByteArrayInputStream(piece));
+        fontRegistry.applyTo(wordMLPackage);
+        FOSettings settings = fontRegistry.newFoSettings();
+        settings.setOpcPackage(wordMLPackage);
+        settings.setImageDirPath(imageDirectory.toString());
+        // keeps the FO instead of rendering it, so it can be joined with the other pieces of its part
+        FoCapture capture = new FoCapture(reportProperties.getMemory());
+        settings.setCustomFoRenderer(capture);
+        Docx4J.toFO(settings, OutputStream.nullOutputStream(), Docx4J.FLAG_NONE);
+        return capture;
+    }
+
+    /**
+     * Lays out the joined FO of a part's pieces with the settings of its first, whose page sequence it is.
+     */
+    private RenderedPart render(List<FoCapture> pieces, Queue<RenderedPart> spilled) throws Exception {
+        String fo = DocumentSplitter.join(pieces.stream().map(piece -> piece.foDocument).toList());
+        pieces.forEach(piece -> piece.foDocument = null);
+        FoCapture capture = pieces.get(0);
+        capture.use(fo);
+        RenderedPart rendered = keep(spilled, capture.layout(fo));
+        capture.keepFo();
+        return rendered;
+    }
+
+    /**
+     * Registers the part's temp files for removal once the report is written or has failed.
+     */
+    private static RenderedPart keep(Queue<RenderedPart> spilled, RenderedPart part) {
+        spilled.add(part);
+        return part;
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering report parts", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to render report part", e.getCause());
+        }
+        return results;
+    }
+
+    private static class FoCapture implements FORenderer, AutoCloseable {
+        private final ReportProperties.Memory memory;
+        private String foDocument;
+        private Path foFile;
+        private int explicitFirstPage;
+        private boolean pageNumbers;
+        private boolean lastPageCitation;
+        private FOSettings settings;
+        private boolean twoPass;
+        private List<SectionPageInformation> pageNumberInformation;
+
+        FoCapture(ReportProperties.Memory memory) {
+            this.memory = memory;
+        }
+
+        @Override
+        public void render(String foDocument, FOSettings settings, boolean twoPass,
+                           List<SectionPageInformation> pageNumberInformation, OutputStream outputStream) {
+            this.foDocument = foDocument;
+            this.settings = settings;
+            this.twoPass = twoPass;
+            this.pageNumberInformation = pageNumberInformation;
+        }
+
+        /**
+         * Takes the FO of the whole part, which is laid out with this piece's settings.
+         */
+        void use(String fo) {
+            this.foDocument = fo;
+            this.explicitFirstPage = explicitFirstPage(fo);
+            this.pageNumbers = PAGE_NUMBER.matcher(fo).find();
+            this.lastPageCitation = LAST_PAGE_CITATION.matcher(fo).find();
+        }
+
+        /**
+         * Keeps the FO only for parts that show page numbers, the others are never laid out again, and
+         * writes it to a temp file when it is larger than the spill threshold.
+         */
+        void keepFo() throws IOException {
+            if (pageNumbers && foDocument.length() > memory.getSpillThreshold()) {
+                foFile = Files.createTempFile(memory.getEffectiveSpillDirectory(), "report-", ".fo");
+                Files.writeString(foFile, foDocument);
+            }
+            if (!pageNumbers || foFile != null) {
+                foDocument = null;
+            }
+        }
+
+        String fo() throws IOException {
+            return foDocument != null ? foDocument : Files.readString(foFile);
+        }
+
+        RenderedPart layout(String fo) throws Exception {
+            // every layout needs its own user agent
+            FORendererApacheFOP.getFOUserAgent(settings, (FopFactory) settings.getSettings().get(FORendererApacheFOP.FOP_FACTORY));
+            SpillBuffer pdf = new SpillBuffer(memory, ".pdf");
+            try {
+                FORendererApacheFOP.getInstance().render(fo, settings, twoPass, pageNumberInformation, pdf.outputStream());
+                int pages;
+                try (PDDocument document = PDDocument.load(pdf.inputStream(), SpillBuffer.memoryUsage(memory))) {
+                    pages = document.getNumberOfPages();
+                }
+                return new RenderedPart(this, pdf, pages);
+            } catch (Exception e) {
+                pdf.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (foFile != null) {
+                Files.deleteIfExists(foFile);
+                foFile = null;
+            }
+        }
+
+        /**
+         * The first page number the part sets itself, when a section restarts numbering, or 0.
+         */
+        private static int explicitFirstPage(String fo) {
+            Matcher pageSequence = FIRST_PAGE_SEQUENCE.matcher(fo);
+            if (pageSequence.find()) {
+                Matcher initialPageNumber = INITIAL_PAGE_NUMBER.matcher(pageSequence.group());
+                if (initialPageNumber.find()) {
+                    return Integer.parseInt(initialPageNumber.group(1));
+                }
+            }
+            return 0;
+        }
+    }
+
+    private record RenderedPart(FoCapture capture, SpillBuffer pdf, int pages) implements AutoCloseable {
+        boolean needsRelayout(int firstPage, int totalPages) {
+            if (!capture.pageNumbers) {
+                return false;
+            }
+            return capture.explicitFirstPage == 0 && firstPage != 1
+                    || capture.lastPageCitation && totalPages != pages;
+        }
+
+        RenderedPart relayout(int firstPage, int totalPages) throws Exception {
+            String fo = LAST_PAGE_CITATION.matcher(capture.fo()).replaceAll(Integer.toString(totalPages));
+            if (capture.explicitFirstPage == 0) {
+                fo = FIRST_PAGE_SEQUENCE.matcher(fo).replaceFirst(pageSequence ->
+                        Matcher.quoteReplacement(pageSequence.group().replaceFirst(">$", " initial-page-number=\"" + firstPage + "\">")));
+            }
+            return capture.layout(fo);
+        }
+
+        /**
+         * Removes the part's PDF and, once, the FO it shares with its relayouts.
+         */
+        @Override
+        public void close() throws IOException {
+            pdf.close();
+            capture.close();
+        }
+    }
+}
@@ -2,14 +2,19 @@ package com.report.parser.service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.RequiredArgsConstructor;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
-import java.util.LinkedHashMap;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -17,23 +22,79 @@ import java.util.Map;
 public class ParserService {
     private final ObjectMapper objectMapper;
     private final ReportGenerationService reportGenerationService;
+    private final BatchReportService batchReportService;
+    private final TemplateRegistry templateRegistry;
+    private final PayloadReader payloadReader;
+    // map keys sorted at every level, so equal payloads always serialize to the same bytes
+    private final ObjectMapper canonicalMapper = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
 
-    public Resource buildDataAndGetReport() throws IOException {
-        ClassPathResource classPathResource = new ClassPathResource("profile.png");
-        Resource photoResource = new InputStreamResource(classPathResource.getInputStream());
+    public PreparedReport buildDataAndGetReport() throws Exception {
+        return prepareReport(templateRegistry.get(null), readPayload());
+    }
+
+    /**
+     * @param id the template id, or null for the default template
+     */
+    public ReportTemplate getTemplate(String id) {
+        return templateRegistry.get(id);
+    }
 
+    public Map<String, Object> readPayload() throws IOException {
         ClassPathResource payloadResource = new ClassPathResource("Payload.json");
-        Map<String, Object> payload = objectMapper.readValue(payloadResource.getInputStream(),
+        return objectMapper.readValue(payloadResource.getInputStream(),
                 new TypeReference<Map<String, Object>>() {
                 });
-        payload.put("profilePhoto", photoResource);
-        Resource template = new ClassPathResource("MyProfile.docx");
-
-        LinkedHashMap<String, String> columnMap = new LinkedHashMap<>();
-        columnMap.put("slNo", "S/N");
-        columnMap.put("name", "Name");
-        columnMap.put("relationship", "Relationship");
-        columnMap.put("mobile", "Mobile");
-        return reportGenerationService.parseToPdf(payload, template, true, columnMap);
+    }
+
+    /**
+     * Content hash of everything the report is rendered from: the template with its columns and images, and
+     * the payload with its keys in a fixed order. Equal keys mean the same report.
+     */
+    public String reportKey(ReportTemplate template, Map<String, Object> payload) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(template.getChecksum().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(canonicalMapper.writeValueAsBytes(payload));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Reports that share the template and every field but the table rows are prepared on one kept document.
+     */
+    public PreparedReport prepareReport(ReportTemplate template, Map<String, Object> payload) throws Exception {
+        return reportGenerationService.prepareReport(template.getChecksum(), payload, template.imagePlaceholders(),
+                template.getCompiledTemplate(), template.getColumns());
+    }
+
+    /**
+     * Prepares a report from a payload that is read as the report is built, e.g. a request body.
+     */
+    public PreparedReport prepareReport(ReportTemplate template, InputStream payload) throws Exception {
+        return reportGenerationService.prepareReport(template.getChecksum(), (columns, rows) -> payloadReader.read(payload, columns, rows),
+                template.imagePlaceholders(), template.getCompiledTemplate(), template.getColumns());
+    }
+
+    /**
+     * Render cost estimate used for admission: the number of table rows plus the image size in kilobytes.
+     */
+    public long estimateRenderCost(ReportTemplate template, List<Map<String, Object>> payloads) {
+        long imageKilobytes = template.getImageBytes() / 1024;
+        long cost = 0;
+        for (Map<String, Object> payload : payloads) {
+            cost += imageKilobytes + 1;
+            if (payload.get("tableData") instanceof Collection<?> tableData) {
+                cost += tableData.size();
+            }
+        }
+        return cost;
+    }
+
+    public StreamingResponseBody buildBatchReport(ReportTemplate template, List<Map<String, Object>> payloads, boolean merged) {
+        // the whole batch renders against the version of the template it started with
+        BatchReportService.ReportPreparer preparer = payload -> prepareReport(template, payload);
+        if (merged) {
+            return outputStream -> batchReportService.writeMerged(payloads, preparer, outputStream);
+        }
+        return outputStream -> batchReportService.writeZip(payloads, preparer, outputStream);
     }
 }
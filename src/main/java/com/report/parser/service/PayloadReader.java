@@ -0,0 +1,80 @@
+package com.report.parser.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads a report payload token by token. Scalar fields become text placeholders; each tableData record is
+ * decoded straight into a value row in column order and handed on, so the records are never held as maps.
+ */
+@Component
+public class PayloadReader {
+    static final String TABLE_DATA = "tableData";
+
+    private final JsonFactory jsonFactory;
+
+    public PayloadReader(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * @param columns the column keys in table order, or null when the report has no table
+     * @param rows    receives one value row per tableData record, in payload order
+     * @return the scalar fields, numbers and booleans as text; nested objects and nulls are left out
+     */
+    public Map<String, Object> read(InputStream inputStream, String[] columns, Consumer<String[]> rows) throws IOException {
+        Map<String, Integer> columnIndex = new HashMap<>();
+        for (int column = 0; columns != null && column < columns.length; column++) {
+            columnIndex.put(columns[column], column);
+        }
+        Map<String, Object> fields = new HashMap<>();
+        try (JsonParser parser = jsonFactory.createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Payload must be a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (TABLE_DATA.equals(field) && value == JsonToken.START_ARRAY && columns != null) {
+                    readRows(parser, columns.length, columnIndex, rows);
+                } else if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                    fields.put(field, parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static void readRows(JsonParser parser, int columns, Map<String, Integer> columnIndex, Consumer<String[]> rows) throws IOException {
+        // input ending inside the array or a record fails with a JsonEOFException, not a null token
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String[] values = new String[columns];
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Integer column = columnIndex.get(parser.currentName());
+                JsonToken value = parser.nextToken();
+                if (column != null && value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                    values[column] = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            rows.accept(values);
+        }
+    }
+}
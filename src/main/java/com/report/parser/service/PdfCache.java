@@ -0,0 +1,383 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rendered reports keyed by a hash of everything that goes into them. Entries live in memory first and,
+ * when a disk directory is configured, are spilled there instead of being dropped when memory is full.
+ * Reports too large for memory go to disk directly.
+ */
+@Service
+@Log4j2
+@RequiredArgsConstructor
+public class PdfCache {
+    private static final String FILE_SUFFIX = ".pdf";
+    private static final String PART_PREFIX = "report-";
+    private static final String PART_SUFFIX = ".part";
+
+    private final ReportProperties reportProperties;
+
+    // both tiers are access ordered, so the eldest entry is the least recently used
+    private final Map<String, MemoryEntry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, DiskEntry> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Spilled files are only indexed in memory, so the ones a previous run left behind are removed.
+     */
+    @PostConstruct
+    public void clearDiskDirectory() throws IOException {
+        Path directory = reportProperties.getPdfCache().getDiskDirectory();
+        if (directory == null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                if (file.getFileName().toString().matches("[0-9a-f]{64}\\.pdf")) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PART_PREFIX + "*" + PART_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    public Optional<Entry> get(String key) {
+        if (!reportProperties.getPdfCache().isEnabled()) {
+            return Optional.empty();
+        }
+        Instant now = Instant.now();
+        Entry entry = null;
+        synchronized (this) {
+            MemoryEntry memoryEntry = memory.get(key);
+            DiskEntry diskEntry = memoryEntry == null ? disk.get(key) : null;
+            Instant createdAt = memoryEntry != null ? memoryEntry.createdAt() : diskEntry != null ? diskEntry.createdAt() : null;
+            if (createdAt != null && isExpired(createdAt, now)) {
+                remove(key);
+            } else if (memoryEntry != null) {
+                entry = memoryEntry;
+            } else if (diskEntry != null) {
+                entry = open(diskEntry);
+            }
+        }
+        (entry != null ? hits : misses).incrementAndGet();
+        return Optional.ofNullable(entry);
+    }
+
+    public void put(String key, byte[] pdf) {
+        ReportProperties.PdfCache config = reportProperties.getPdfCache();
+        if (!config.isEnabled() || !fits(pdf.length)) {
+            return;
+        }
+        if (pdf.length > config.getMaxMemoryBytes()) {
+            spill(new MemoryEntry(key, pdf, Instant.now()));
+            return;
+        }
+        List<MemoryEntry> spilled = new ArrayList<>();
+        synchronized (this) {
+            remove(key);
+            memory.put(key, new MemoryEntry(key, pdf, Instant.now()));
+            memoryBytes += pdf.length;
+            var iterator = memory.values().iterator();
+            while (memoryBytes > config.getMaxMemoryBytes() && iterator.hasNext()) {
+                MemoryEntry eldest = iterator.next();
+                iterator.remove();
+                memoryBytes -= eldest.size();
+                spilled.add(eldest);
+            }
+        }
+        // written outside the lock, a spilled entry is simply a miss until its file is in place
+        spilled.forEach(this::spill);
+    }
+
+    /**
+     * A stream to tee a report into while it is sent, cached on {@link Recorder#commit()}. It holds the report
+     * in memory up to the memory limit and moves it to a file in the disk directory beyond that; a report
+     * too large for either is no longer recorded. Closing it without a commit discards the recording.
+     */
+    public Recorder record(String key) {
+        return new Recorder(key);
+    }
+
+    /**
+     * Opens the file of a disk entry under the lock, so it can't be evicted and deleted before the response
+     * reads it; the open file stays readable when it is.
+     */
+    private Entry open(DiskEntry entry) {
+        try {
+            return new OpenFile(FileChannel.open(entry.file(), StandardOpenOption.READ), entry.file(), entry.size(), entry.createdAt());
+        } catch (IOException e) {
+            log.warn("Unable to open cached report {}: {}", entry.file(), e.getMessage());
+            remove(entry.key());
+            return null;
+        }
+    }
+
+    public Stats getStats() {
+        ReportProperties.PdfCache config = reportProperties.getPdfCache();
+        synchronized (this) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), memory.size(), memoryBytes, disk.size(),
+                    diskBytes, config.getMaxMemoryBytes(), config.getMaxDiskBytes());
+        }
+    }
+
+    private void spill(MemoryEntry entry) {
+        ReportProperties.PdfCache config = reportProperties.getPdfCache();
+        Path directory = config.getDiskDirectory();
+        if (directory == null || entry.size() > config.getMaxDiskBytes() || isExpired(entry.createdAt(), Instant.now())) {
+            evictions.incrementAndGet();
+            return;
+        }
+        Path file = directory.resolve(entry.key() + FILE_SUFFIX);
+        try {
+            Files.write(file, entry.pdf());
+        } catch (IOException e) {
+            log.warn("Unable to spill cached report {} to disk: {}", entry.key(), e.getMessage());
+            evictions.incrementAndGet();
+            return;
+        }
+        addToDisk(new DiskEntry(entry.key(), file, entry.size(), entry.createdAt()));
+    }
+
+    private void addToDisk(DiskEntry entry) {
+        ReportProperties.PdfCache config = reportProperties.getPdfCache();
+        List<DiskEntry> evicted = new ArrayList<>();
+        synchronized (this) {
+            // a copy put in memory meanwhile is the same report
+            MemoryEntry memoryEntry = memory.remove(entry.key());
+            if (memoryEntry != null) {
+                memoryBytes -= memoryEntry.size();
+            }
+            DiskEntry previous = disk.put(entry.key(), entry);
+            if (previous != null) {
+                diskBytes -= previous.size();
+            }
+            diskBytes += entry.size();
+            var iterator = disk.values().iterator();
+            while (diskBytes > config.getMaxDiskBytes() && iterator.hasNext()) {
+                DiskEntry eldest = iterator.next();
+                iterator.remove();
+                diskBytes -= eldest.size();
+                evicted.add(eldest);
+            }
+        }
+        evicted.forEach(this::delete);
+    }
+
+    private void remove(String key) {
+        MemoryEntry memoryEntry = memory.remove(key);
+        if (memoryEntry != null) {
+            memoryBytes -= memoryEntry.size();
+        }
+        DiskEntry diskEntry = disk.remove(key);
+        if (diskEntry != null) {
+            diskBytes -= diskEntry.size();
+            delete(diskEntry);
+        }
+    }
+
+    private void delete(DiskEntry entry) {
+        evictions.incrementAndGet();
+        try {
+            // a response that already opened the file keeps reading it
+            Files.deleteIfExists(entry.file());
+        } catch (IOException e) {
+            log.warn("Unable to delete cached report {}: {}", entry.file(), e.getMessage());
+        }
+    }
+
+    private boolean fits(long size) {
+        ReportProperties.PdfCache config = reportProperties.getPdfCache();
+        return size <= config.getMaxMemoryBytes()
+                || config.getDiskDirectory() != null && size <= config.getMaxDiskBytes();
+    }
+
+    private boolean isExpired(Instant createdAt, Instant now) {
+        Duration ttl = reportProperties.getPdfCache().getTtl();
+        return createdAt.plus(ttl).isBefore(now);
+    }
+
+    /**
+     * A cached report as handed out by {@link #get(String)}, to be written once.
+     */
+    public sealed interface Entry permits MemoryEntry, OpenFile {
+        long size();
+
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    private record MemoryEntry(String key, byte[] pdf, Instant createdAt) implements Entry {
+        @Override
+        public long size() {
+            return pdf.length;
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            outputStream.write(pdf);
+        }
+    }
+
+    private record DiskEntry(String key, Path file, long size, Instant createdAt) {
+    }
+
+    private record OpenFile(FileChannel channel, Path file, long size, Instant createdAt) implements Entry {
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            // transferTo lets the kernel copy the file where the target channel allows it
+            try (channel) {
+                var target = Channels.newChannel(outputStream);
+                long position = 0;
+                while (position < size) {
+                    long transferred = channel.transferTo(position, size - position, target);
+                    if (transferred <= 0) {
+                        throw new EOFException("Cached report " + file + " is shorter than " + size + " bytes");
+                    }
+                    position += transferred;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a report while it is written elsewhere. It never fails the write it is teed into: once it
+     * can't keep the report, it drops what it has and ignores the rest.
+     */
+    public final class Recorder extends OutputStream {
+        private final String key;
+        private final Instant createdAt = Instant.now();
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private Path partFile;
+        private OutputStream fileStream;
+        private long size;
+        private boolean done;
+
+        private Recorder(String key) {
+            this.key = key;
+            this.done = !reportProperties.getPdfCache().isEnabled();
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (done) {
+                return;
+            }
+            size += len;
+            if (!fits(size)) {
+                discard();
+                return;
+            }
+            try {
+                if (fileStream == null && size > reportProperties.getPdfCache().getMaxMemoryBytes()) {
+                    moveToDisk();
+                }
+                (fileStream != null ? fileStream : buffer).write(b, off, len);
+            } catch (IOException e) {
+                log.warn("Unable to record report {} for the cache: {}", key, e.getMessage());
+                discard();
+            }
+        }
+
+        /**
+         * Caches the complete report.
+         */
+        public void commit() {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (fileStream == null) {
+                put(key, buffer.toByteArray());
+                buffer = null;
+                return;
+            }
+            Path file = reportProperties.getPdfCache().getDiskDirectory().resolve(key + FILE_SUFFIX);
+            try {
+                fileStream.close();
+                Files.move(partFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.warn("Unable to move recorded report {} to the cache: {}", key, e.getMessage());
+                deletePart();
+                return;
+            }
+            addToDisk(new DiskEntry(key, file, size, createdAt));
+        }
+
+        @Override
+        public void close() {
+            discard();
+        }
+
+        private void moveToDisk() throws IOException {
+            partFile = Files.createTempFile(reportProperties.getPdfCache().getDiskDirectory(), PART_PREFIX, PART_SUFFIX);
+            fileStream = new BufferedOutputStream(Files.newOutputStream(partFile));
+            buffer.writeTo(fileStream);
+            buffer = null;
+        }
+
+        private void discard() {
+            if (done) {
+                return;
+            }
+            done = true;
+            buffer = null;
+            deletePart();
+        }
+
+        private void deletePart() {
+            if (partFile == null) {
+                return;
+            }
+            try {
+                if (fileStream != null) {
+                    fileStream.close();
+                }
+                Files.deleteIfExists(partFile);
+            } catch (IOException e) {
+                log.warn("Unable to delete recorded report {}: {}", partFile, e.getMessage());
+            }
+        }
+    }
+
+    public record Stats(long hits, long misses, long evictions, int memoryEntries, long memoryBytes,
+                        int diskEntries, long diskBytes, long maxMemoryBytes, long maxDiskBytes) {
+    }
+}
@@ -0,0 +1,14 @@
+package com.report.parser.service;
+
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+
+/**
+ * A report filled in and ready for export, with the trace its preparation was timed on. Preparing and
+ * exporting are separate calls, often on different threads, so everything the export needs goes with it.
+ *
+ * @param direct  whether the report's template was compiled for the direct renderer
+ * @param pending the document cache entry to keep once the report is exported, null if it isn't kept
+ */
+public record PreparedReport(WordprocessingMLPackage document, RenderTrace trace, boolean direct,
+                             DocumentCache.Pending pending) {
+}
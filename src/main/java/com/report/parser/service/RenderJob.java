@@ -0,0 +1,109 @@
+package com.report.parser.service;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+public class RenderJob {
+    public enum Lane { INTERACTIVE, BULK }
+
+    public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    private final String id = UUID.randomUUID().toString();
+    private final Lane lane;
+    private final long cost;
+    private final Instant submittedAt = Instant.now();
+    private volatile State state = State.QUEUED;
+    private volatile Instant finishedAt;
+    private volatile Result result;
+    private volatile String error;
+
+    public RenderJob(Lane lane, long cost) {
+        this.lane = lane;
+        this.cost = cost;
+    }
+
+    void running() {
+        state = State.RUNNING;
+    }
+
+    void done(Result result) {
+        this.result = result;
+        finish(State.DONE);
+    }
+
+    void failed(String error) {
+        this.error = error;
+        finish(State.FAILED);
+    }
+
+    private void finish(State state) {
+        finishedAt = Instant.now();
+        this.state = state;
+    }
+
+    public Status getStatus() {
+        return new Status(id, lane, state, cost, submittedAt, finishedAt, error);
+    }
+
+    /**
+     * Writes the content of a job, e.g. the PDF of a report.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void writeTo(OutputStream outputStream) throws Exception;
+    }
+
+    /**
+     * The content of a finished job, in memory up to the spill threshold and in a temp file beyond it,
+     * until the job expires.
+     */
+    public static class Result implements AutoCloseable {
+        @Getter
+        private final String contentType;
+        @Getter
+        private final String fileName;
+        private final SpillBuffer content;
+        private boolean closed;
+
+        Result(SpillBuffer content, String contentType, String fileName) {
+            this.content = content;
+            this.contentType = contentType;
+            this.fileName = fileName;
+        }
+
+        public long size() {
+            return content.size();
+        }
+
+        /**
+         * The content in a stream the caller closes. It stays readable when the job expires meanwhile.
+         *
+         * @return null once the job has expired
+         */
+        public synchronized InputStream openStream() throws IOException {
+            return closed ? null : content.newInputStream();
+        }
+
+        /**
+         * The held size in kilobytes, the unit of the lane budget.
+         */
+        long cost() {
+            return (content.size() + 1023) / 1024;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            closed = true;
+            content.close();
+        }
+    }
+
+    public record Status(String id, Lane lane, State state, long cost, Instant submittedAt, Instant finishedAt, String error) {
+    }
+}
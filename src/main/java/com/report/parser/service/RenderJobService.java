@@ -0,0 +1,157 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs report renders off the request thread. Every lane has its own workers and bounded queue, so
+ * interactive reports never wait behind bulk runs, and admits work by estimated cost so a burst of
+ * large reports is turned away with 429 instead of piling up. Results are held until they expire and
+ * count against the budget of their lane by size until then.
+ */
+@Service
+@Log4j2
+public class RenderJobService {
+    private final ReportProperties.Jobs properties;
+    private final ReportProperties.Memory memory;
+    private final Map<RenderJob.Lane, LaneExecutor> lanes = new EnumMap<>(RenderJob.Lane.class);
+    private final Map<String, RenderJob> jobs = new ConcurrentHashMap<>();
+
+    public RenderJobService(ReportProperties reportProperties) {
+        this.properties = reportProperties.getJobs();
+        this.memory = reportProperties.getMemory();
+        lanes.put(RenderJob.Lane.INTERACTIVE, new LaneExecutor(RenderJob.Lane.INTERACTIVE, properties.getInteractive()));
+        lanes.put(RenderJob.Lane.BULK, new LaneExecutor(RenderJob.Lane.BULK, properties.getBulk()));
+    }
+
+    /**
+     * @param contentType the content type of what the task writes, handed out with the result
+     */
+    public RenderJob submit(RenderJob.Lane lane, long cost, String contentType, String fileName, RenderJob.Task task) {
+        RenderJob job = new RenderJob(lane, cost);
+        lanes.get(lane).submit(job, () -> {
+            SpillBuffer content = new SpillBuffer(memory, "-" + fileName);
+            try {
+                task.writeTo(content.outputStream());
+                return new RenderJob.Result(content, contentType, fileName);
+            } catch (Exception e) {
+                content.close();
+                throw e;
+            }
+        });
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    public Optional<RenderJob> get(String id) {
+        return Optional.ofNullable(jobs.get(id)).filter(job -> !isExpired(job, Instant.now()));
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void purgeExpired() {
+        Instant now = Instant.now();
+        jobs.values().removeIf(job -> isExpired(job, now) && release(job));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lanes.values().forEach(lane -> lane.executor.shutdownNow());
+        jobs.values().removeIf(this::release);
+    }
+
+    /**
+     * Deletes the result of the job and gives its size back to the lane budget.
+     *
+     * @return true, for use in removeIf
+     */
+    private boolean release(RenderJob job) {
+        RenderJob.Result result = job.getResult();
+        if (result != null) {
+            lanes.get(job.getLane()).pendingCost.addAndGet(-result.cost());
+            try {
+                result.close();
+            } catch (IOException e) {
+                log.warn("Unable to delete the result of job {}: {}", job.getId(), e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private boolean isExpired(RenderJob job, Instant now) {
+        return job.getFinishedAt() != null && job.getFinishedAt().plus(properties.getResultTtl()).isBefore(now);
+    }
+
+    private static class LaneExecutor {
+        private final RenderJob.Lane lane;
+        private final long maxPendingCost;
+        private final AtomicLong pendingCost = new AtomicLong();
+        private final ThreadPoolExecutor executor;
+
+        LaneExecutor(RenderJob.Lane lane, ReportProperties.Lane properties) {
+            this.lane = lane;
+            this.maxPendingCost = properties.getMaxPendingCost();
+            this.executor = new ThreadPoolExecutor(properties.getWorkers(), properties.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, properties.getQueueCapacity())),
+                    Thread.ofPlatform().name("render-" + lane.name().toLowerCase() + "-", 0).factory());
+        }
+
+        void submit(RenderJob job, Callable<RenderJob.Result> task) {
+            if (!reserve(job.getCost())) {
+                throw new JobRejectedException("The " + lane.name().toLowerCase() + " lane is at its render capacity");
+            }
+            try {
+                executor.execute(() -> run(job, task));
+            } catch (RejectedExecutionException e) {
+                pendingCost.addAndGet(-job.getCost());
+                throw new JobRejectedException("The " + lane.name().toLowerCase() + " queue is full");
+            }
+        }
+
+        /**
+         * A job larger than the whole budget is still let in when nothing else is pending.
+         */
+        private boolean reserve(long cost) {
+            while (true) {
+                long pending = pendingCost.get();
+                if (pending > 0 && pending + cost > maxPendingCost) {
+                    return false;
+                }
+                if (pendingCost.compareAndSet(pending, pending + cost)) {
+                    return true;
+                }
+            }
+        }
+
+        private void run(RenderJob job, Callable<RenderJob.Result> task) {
+            job.running();
+            try {
+                RenderJob.Result result = task.call();
+                // held until the job expires
+                pendingCost.addAndGet(result.cost());
+                job.done(result);
+            } catch (Exception e) {
+                log.error("Render job {} failed: ", job.getId(), e);
+                // the cause stays in the log, clients only learn that the render failed
+                job.failed("Render failed");
+            } finally {
+                pendingCost.addAndGet(-job.getCost());
+            }
+        }
+    }
+}
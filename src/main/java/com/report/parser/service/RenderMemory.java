@@ -0,0 +1,132 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The memory budget of report exports. Every export reserves its estimated memory before it starts and
+ * returns it when it ends; exports that don't fit wait in arrival order, and are turned away with 429 when
+ * the wait runs out. An export larger than the whole budget waits until it can run alone. Memory held past
+ * an export, like a kept document, is given back first before an export has to wait.
+ */
+@Service
+@Log4j2
+public class RenderMemory implements MeterBinder {
+    private static final Reservation NONE = new Reservation(null, 0);
+
+    private final ReportProperties.Memory properties;
+    private final int budgetKilobytes;
+    // one permit per kilobyte, fair so a large export isn't overtaken by every small one
+    private final Semaphore permits;
+    private volatile BooleanSupplier reclaimer = () -> false;
+
+    public RenderMemory(ReportProperties reportProperties) {
+        this.properties = reportProperties.getMemory();
+        this.budgetKilobytes = (int) Math.min(Integer.MAX_VALUE, Math.max(1, properties.getEffectiveMaxBytes() / 1024));
+        this.permits = new Semaphore(budgetKilobytes, true);
+    }
+
+    /**
+     * What an export of a prepared report is expected to hold at its peak. XSL-FO output grows with the
+     * rows far faster than the document tree does, the direct renderer barely more than the tree.
+     */
+    public long estimate(int rows, boolean direct) {
+        return properties.getBaseBytes() + (long) rows * (direct ? properties.getDirectBytesPerRow() : properties.getFoBytesPerRow());
+    }
+
+    /**
+     * Waits until the bytes fit in the budget and takes them.
+     *
+     * @throws JobRejectedException if they don't fit within the configured wait
+     */
+    public Reservation reserve(long bytes) throws InterruptedException {
+        if (!properties.isEnabled()) {
+            return NONE;
+        }
+        int kilobytes = (int) Math.min(budgetKilobytes, Math.max(1, bytes / 1024));
+        if (!acquireNow(kilobytes)) {
+            log.debug("Export of {}KB waits for render memory, {}KB free", kilobytes, permits.availablePermits());
+            if (!permits.tryAcquire(kilobytes, properties.getMaxWait().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new JobRejectedException("Render memory is exhausted, try again later");
+            }
+        }
+        return new Reservation(permits, kilobytes);
+    }
+
+    /**
+     * Sets what gives back memory held past an export when an export would otherwise wait. Each call frees
+     * one holding and answers false once nothing is left to free.
+     */
+    public void reclaimWith(BooleanSupplier reclaimer) {
+        this.reclaimer = reclaimer;
+    }
+
+    private boolean acquireNow(int kilobytes) {
+        while (!permits.tryAcquire(kilobytes)) {
+            if (!reclaimer.getAsBoolean()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getReservedBytes() {
+        return (long) (budgetKilobytes - permits.availablePermits()) * 1024;
+    }
+
+    public long getBudgetBytes() {
+        return (long) budgetKilobytes * 1024;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("report.render.memory.reserved", this, RenderMemory::getReservedBytes)
+                .baseUnit("bytes").register(registry);
+        Gauge.builder("report.render.memory.budget", this, RenderMemory::getBudgetBytes)
+                .baseUnit("bytes").register(registry);
+        Gauge.builder("report.render.memory.waiting", permits, Semaphore::getQueueLength)
+                .register(registry);
+    }
+
+    /**
+     * Memory taken from the budget, returned on close.
+     */
+    public static final class Reservation implements AutoCloseable {
+        private final Semaphore permits;
+        private int kilobytes;
+
+        private Reservation(Semaphore permits, int kilobytes) {
+            this.permits = permits;
+            this.kilobytes = kilobytes;
+        }
+
+        /**
+         * Moves up to the given bytes into a reservation of their own, which stays taken after this one is
+         * closed. The rest is still returned on close.
+         */
+        public Reservation keep(long bytes) {
+            int kept = (int) Math.min(kilobytes, Math.max(1, bytes / 1024));
+            if (kept <= 0) {
+                return NONE;
+            }
+            kilobytes -= kept;
+            return new Reservation(permits, kept);
+        }
+
+        @Override
+        public void close() {
+            if (kilobytes > 0) {
+                permits.release(kilobytes);
+                kilobytes = 0;
+            }
+        }
+    }
+}
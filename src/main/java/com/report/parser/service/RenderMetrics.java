@@ -0,0 +1,99 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes render and template compile stages to Micrometer and logs renders slower than the configured threshold.
+ */
+@Service
+@Log4j2
+@RequiredArgsConstructor
+public class RenderMetrics {
+    private final MeterRegistry meterRegistry;
+    private final ReportProperties reportProperties;
+
+    public RenderTrace start(String template) {
+        return new RenderTrace(template);
+    }
+
+    public void finish(RenderTrace trace) {
+        trace.end();
+        recordStages(trace);
+        long elapsedNanos = trace.elapsedNanos();
+        Timer.builder("report.render")
+                .description("Render time from the template copy to the last PDF byte")
+                .tag("template", trace.getTemplate())
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        counter("report.render.rows", trace.getTemplate()).increment(trace.getRows());
+        counter("report.render.images", trace.getTemplate()).increment(trace.getImages());
+        DistributionSummary.builder("report.render.bytes")
+                .description("PDF bytes written per report")
+                .baseUnit("bytes")
+                .tag("template", trace.getTemplate())
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(trace.getBytes());
+
+        long thresholdNanos = reportProperties.getMetrics().getSlowRenderThreshold().toNanos();
+        if (elapsedNanos > thresholdNanos) {
+            log.warn("Slow render of {} took {}ms ({} rows, {} images, {} bytes): {}", trace.getTemplate(),
+                    elapsedNanos / 1_000_000, trace.getRows(), trace.getImages(), trace.getBytes(), trace.describeStages());
+        }
+    }
+
+    public void failed(RenderTrace trace, Throwable cause) {
+        String stage = trace.getStage() != null ? trace.getStage() : "unknown";
+        trace.end();
+        recordStages(trace);
+        failure(trace.getTemplate(), stage, cause);
+        log.warn("Render of {} failed in stage {} after {}ms: {}", trace.getTemplate(), stage,
+                trace.elapsedNanos() / 1_000_000, trace.describeStages());
+    }
+
+    /**
+     * Counts a failure the render recovered from, such as an image that could not be embedded.
+     */
+    public void failure(String template, String stage, Throwable cause) {
+        Counter.builder("report.render.failures")
+                .description("Render failures by stage and exception type")
+                .tag("template", template)
+                .tag("stage", stage)
+                .tag("cause", cause.getClass().getSimpleName())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void recordCompile(String template, String stage, long nanos) {
+        Timer.builder("report.template.compile")
+                .description("Template compile time by stage")
+                .tag("template", template)
+                .tag("stage", stage)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void recordStages(RenderTrace trace) {
+        trace.getStageNanos().forEach((stage, nanos) -> Timer.builder("report.render.stage")
+                .description("Render time by stage")
+                .tag("template", trace.getTemplate())
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS));
+    }
+
+    private Counter counter(String name, String template) {
+        return Counter.builder(name).tag("template", template).register(meterRegistry);
+    }
+}
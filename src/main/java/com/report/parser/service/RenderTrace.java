@@ -0,0 +1,68 @@
+package com.report.parser.service;
+
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Stage timings and output figures of one render, from the template copy to the PDF bytes.
+ * A render moves through its stages on one thread at a time, so the trace is not synchronized.
+ */
+@Getter
+public class RenderTrace {
+    private final String template;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    private String stage;
+    private long stageStartNanos;
+    private int rows;
+    private int images;
+    private long bytes;
+
+    public RenderTrace(String template) {
+        this.template = template;
+    }
+
+    /**
+     * Ends the running stage, if any, and starts the named one.
+     */
+    public void stage(String name) {
+        end();
+        stage = name;
+        stageStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Ends the running stage, e.g. while a prepared report waits to be exported.
+     */
+    public void end() {
+        if (stage != null) {
+            stageNanos.merge(stage, System.nanoTime() - stageStartNanos, Long::sum);
+            stage = null;
+        }
+    }
+
+    public void addRows(int count) {
+        rows += count;
+    }
+
+    public void addImages(int count) {
+        images += count;
+    }
+
+    public void addBytes(long count) {
+        bytes += count;
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    String describeStages() {
+        return stageNanos.entrySet().stream()
+                .map(entry -> String.format("%s=%dms", entry.getKey(), entry.getValue() / 1_000_000))
+                .collect(Collectors.joining(" "));
+    }
+}
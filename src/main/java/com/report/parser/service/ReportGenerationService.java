@@ -1,77 +1,240 @@
 package com.report.parser.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import jakarta.xml.bind.JAXBElement;
-import jakarta.xml.bind.JAXBException;
+import com.report.parser.config.ReportProperties;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.docx4j.Docx4J;
+import org.docx4j.convert.out.FOSettings;
 import org.docx4j.dml.wordprocessingDrawing.Inline;
-import org.docx4j.fonts.Mapper;
-import org.docx4j.fonts.PhysicalFont;
-import org.docx4j.fonts.PhysicalFonts;
 import org.docx4j.jaxb.Context;
-import org.docx4j.model.datastorage.migration.VariablePrepare;
-import org.docx4j.openpackaging.exceptions.Docx4JException;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.Part;
 import org.docx4j.openpackaging.parts.WordprocessingML.BinaryPartAbstractImage;
-import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
 import org.docx4j.wml.*;
-import org.springframework.core.io.FileSystemResource;
 import org.springframework.stereotype.Service;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.core.io.Resource;
 
 @Service
 @Log4j2
 @RequiredArgsConstructor
-public class ReportGenerationService extends Mapper {
-    String regex = "\\$\\{[^{}]+\\}";
-    Pattern pattern = Pattern.compile(regex);
-    private final ObjectMapper objectMapper;
+public class ReportGenerationService {
+    private static final long EMUS_PER_PIXEL = 9525;
+
+    private final ImageCache imageCache;
+    private final RenderMetrics renderMetrics;
+    private final FontRegistry fontRegistry;
+    private final ParallelPdfRenderer parallelPdfRenderer;
+    private final DirectPdfRenderer directPdfRenderer;
+    private final RenderMemory renderMemory;
+    private final DocumentCache documentCache;
+    private final ReportProperties reportProperties;
+
+    /**
+     * Prepares a report on the document kept for the same template version and fields, if there is one, so
+     * only its table rows are written; otherwise prepares it in full and keeps it once it is exported.
+     *
+     * @param templateVersion changes whenever the template, its columns or its images do
+     * @param images          image placeholders that don't come from the payload
+     */
+    public PreparedReport prepareReport(String templateVersion, Map<String, Object> payload, Map<String, Object> images, CompiledTemplate compiledTemplate, LinkedHashMap<String, String> columnMap) throws Exception {
+        RenderTrace trace = renderMetrics.start(compiledTemplate.getName());
+        try {
+            Map<String, Object> placeholderMap = new HashMap<>(payload);
+            placeholderMap.putAll(images);
+            return prepareReusable(documentCache.key(templateVersion, payload), placeholderMap, compiledTemplate, columnMap,
+                    tableWriter -> tableWriter.write(tableWriter.valuesOf(tableRecords(payload.get("tableData")))), trace);
+        } catch (Exception e) {
+            renderMetrics.failed(trace, e);
+            throw e;
+        }
+    }
 
-    public Resource parseToPdf(Map<String, Object> placeholderMap, Resource template, boolean tableInclude, LinkedHashMap<String, String> columnMap) {
+    /**
+     * Prepares a report while its payload is still being read, like {@link #prepareReport(String, Map, Map,
+     * CompiledTemplate, LinkedHashMap)}. Table rows are built as their records arrive and inserted once the
+     * placeholders are filled, so the payload is never held in full. With the document cache, the fields that
+     * pick the document are only known once the payload is read, so rows are formatted when they go in.
+     *
+     * @param placeholderMap placeholders that don't come from the payload, e.g. images
+     */
+    public PreparedReport prepareReport(String templateVersion, PayloadSource payload, Map<String, Object> placeholderMap, CompiledTemplate compiledTemplate, LinkedHashMap<String, String> columnMap) throws Exception {
+        RenderTrace trace = renderMetrics.start(compiledTemplate.getName());
         try {
-            WordprocessingMLPackage wordMLPackage = prepareWordMLPackage(placeholderMap, template);
+            if (!documentCache.isEnabled()) {
+                return prepareStreamed(payload, placeholderMap, compiledTemplate, columnMap, trace);
+            }
+            // reading the payload is timed as table work, it is mostly decoding rows
+            trace.stage("table");
+            String[] columns = hasTable(compiledTemplate.getTemplateIndex(), columnMap) ? columnMap.keySet().toArray(new String[0]) : null;
+            List<Tr> rows = new ArrayList<>();
+            Map<String, Object> fields = payload.read(columns, values -> rows.add(TableWriter.createRow(values, columns.length)));
+            String key = documentCache.key(templateVersion, fields);
+            fields.putAll(placeholderMap);
+            return prepareReusable(key, fields, compiledTemplate, columnMap, tableWriter -> {
+                rows.forEach(tableWriter::format);
+                return tableWriter.insert(rows);
+            }, trace);
+        } catch (Exception e) {
+            renderMetrics.failed(trace, e);
+            throw e;
+        }
+    }
+
+    private PreparedReport prepareStreamed(PayloadSource payload, Map<String, Object> placeholderMap, CompiledTemplate compiledTemplate, LinkedHashMap<String, String> columnMap,
+                                                    RenderTrace trace) throws Exception {
+        trace.stage("load");
+        WordprocessingMLPackage wordMLPackage = compiledTemplate.newDocument();
+        trace.stage("fonts");
+        fontRegistry.applyTo(wordMLPackage);
+
+        // reading the payload is timed as table work, it is mostly building rows
+        trace.stage("table");
+        TableWriter tableWriter = findTableWriter(wordMLPackage, compiledTemplate.getTemplateIndex(), columnMap);
+        List<Tr> rows = new ArrayList<>();
+        Map<String, Object> fields = payload.read(tableWriter != null ? tableWriter.getColumns() : null,
+                values -> rows.add(tableWriter.createRow(values)));
+        fields.putAll(placeholderMap);
+
+        // rows go in last, the placeholder locations inside the table don't account for them
+        fillPlaceholders(wordMLPackage, fields, compiledTemplate.getTemplateIndex(), trace);
+        if (tableWriter != null) {
+            trace.stage("table");
+            trace.addRows(tableWriter.insert(rows));
+        }
+        trace.end();
+        return new PreparedReport(wordMLPackage, trace, compiledTemplate.isDirectRender(), null);
+    }
 
-            // if there is some table content then add table
-            if (tableInclude) {
-                List<Map<String, String>> tableData = objectMapper.convertValue(placeholderMap.get("tableData"),
-                        new TypeReference<List<Map<String, String>>>() {});
+    /**
+     * Takes the document kept for the key, or prepares a new one, and writes the table rows into it. Either
+     * way the document is kept for the key once the report is exported.
+     */
+    private PreparedReport prepareReusable(String key, Map<String, Object> placeholderMap, CompiledTemplate compiledTemplate, LinkedHashMap<String, String> columnMap,
+                                                    ToIntFunction<TableWriter> writeRows, RenderTrace trace) throws Exception {
+        trace.stage("load");
+        Optional<DocumentCache.Entry> cached = documentCache.checkOut(key);
+        WordprocessingMLPackage wordMLPackage;
+        TableWriter tableWriter;
+        if (cached.isPresent()) {
+            // text, images and fonts are in place already, the table was emptied when the document was kept
+            wordMLPackage = cached.get().document();
+            tableWriter = cached.get().tableWriter();
+        } else {
+            wordMLPackage = prepareWordMLPackage(placeholderMap, compiledTemplate, trace);
+            trace.stage("fonts");
+            fontRegistry.applyTo(wordMLPackage);
+            tableWriter = findTableWriter(wordMLPackage, compiledTemplate.getTemplateIndex(), columnMap);
+        }
+        int written = 0;
+        if (tableWriter != null) {
+            trace.stage("table");
+            written = writeRows.applyAsInt(tableWriter);
+            trace.addRows(written);
+        }
+        DocumentCache.Pending pending = documentCache.track(wordMLPackage, key, tableWriter, written);
+        trace.end();
+        return new PreparedReport(wordMLPackage, trace, compiledTemplate.isDirectRender(), pending);
+    }
 
-                addTableToDocument(wordMLPackage, tableData, columnMap);
+    /**
+     * Exports the report once its estimated memory fits in the render memory budget, waiting for it if need be.
+     *
+     * @throws JobRejectedException if the memory doesn't free up in time
+     */
+    public void writePdf(PreparedReport report, OutputStream outputStream) throws IOException {
+        WordprocessingMLPackage wordMLPackage = report.document();
+        RenderTrace trace = report.trace();
+        boolean direct = report.direct();
+        CountingOutputStream countingOutputStream = new CountingOutputStream(outputStream);
+        trace.stage("queue");
+        try (RenderMemory.Reservation reservation = renderMemory.reserve(renderMemory.estimate(trace.getRows(), direct))) {
+            trace.stage("export");
+            if (!(direct && writeDirect(wordMLPackage, countingOutputStream, trace))
+                    && !parallelPdfRenderer.write(wordMLPackage, countingOutputStream)) {
+                writeFo(wordMLPackage, countingOutputStream);
             }
-            checkTextAlignment(wordMLPackage);
-            // Export to PDF
-            wordMLPackage.setFontMapper(new ReportGenerationService(objectMapper));
-            OutputStream os = new java.io.FileOutputStream("report.pdf");
-            Docx4J.toPDF(wordMLPackage, os);
+            documentCache.checkIn(report.pending(), reservation);
+        } catch (RuntimeException e) {
+            renderMetrics.failed(trace, e);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            renderMetrics.failed(trace, e);
+            throw new IOException("Interrupted while waiting for render memory", e);
+        } catch (Exception e) {
+            renderMetrics.failed(trace, e);
+            throw new IOException("Unable to export report to PDF", e);
+        }
+        trace.addBytes(countingOutputStream.count);
+        renderMetrics.finish(trace);
+    }
 
-            return new FileSystemResource("report.pdf");
+    /**
+     * Exports the report through XSL-FO whatever its template's renderer, without metrics or the memory budget,
+     * e.g. to prime FOP at startup. Its document isn't kept, as it holds no memory the cache could take over.
+     */
+    public void writeFoPdf(PreparedReport report, OutputStream outputStream) throws IOException {
+        WordprocessingMLPackage wordMLPackage = report.document();
+        try {
+            writeFo(wordMLPackage, outputStream);
         } catch (Exception e) {
-            log.info("Error occurred: {}", e.getMessage());
+            throw new IOException("Unable to export report to PDF", e);
         }
-        return null;
     }
 
-    private WordprocessingMLPackage prepareWordMLPackage(Map<String, Object> placeholderMap, Resource template) throws Exception {
-        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.load(template.getInputStream());
-        MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+    private void writeFo(WordprocessingMLPackage wordMLPackage, OutputStream outputStream) throws Exception {
+        FOSettings settings = fontRegistry.newFoSettings();
+        settings.setOpcPackage(wordMLPackage);
+        // docx4j writes the images out for FOP to read and never removes them
+        Path imageDirectory = SpillBuffer.createDirectory(reportProperties.getMemory());
+        try {
+            settings.setImageDirPath(imageDirectory.toString());
+            Docx4J.toFO(settings, outputStream, Docx4J.FLAG_NONE);
+        } finally {
+            SpillBuffer.deleteDirectory(imageDirectory);
+        }
+    }
+
+    /**
+     * @return false, with nothing written, if the report's content turned out not to suit the direct renderer,
+     * e.g. text the fonts can't show
+     */
+    private boolean writeDirect(WordprocessingMLPackage wordMLPackage, OutputStream outputStream, RenderTrace trace) throws IOException {
+        try {
+            directPdfRenderer.render(wordMLPackage, outputStream);
+            return true;
+        } catch (DirectPdfRenderer.UnsupportedContentException e) {
+            log.debug("Rendering {} report through XSL-FO, it uses {}", trace.getTemplate(), e.getMessage());
+            renderMetrics.failure(trace.getTemplate(), "direct", e);
+            return false;
+        }
+    }
+
+    private WordprocessingMLPackage prepareWordMLPackage(Map<String, Object> placeholderMap, CompiledTemplate compiledTemplate, RenderTrace trace) throws Exception {
+        trace.stage("load");
+        WordprocessingMLPackage wordMLPackage = compiledTemplate.newDocument();
+        fillPlaceholders(wordMLPackage, placeholderMap, compiledTemplate.getTemplateIndex(), trace);
+        return wordMLPackage;
+    }
 
-        // find the defined keys in docx file and verify with placeholderMap
-        Set<String> requestedKeys = new HashSet<>();
-        getKeysFromDocxFile(documentPart, requestedKeys);
-        verifyPlaceholderMap(requestedKeys, placeholderMap);
+    private void fillPlaceholders(WordprocessingMLPackage wordMLPackage, Map<String, Object> placeholderMap, TemplateIndex templateIndex, RenderTrace trace) {
+        trace.stage("text");
+        // verify the defined keys in docx file with placeholderMap
+        verifyPlaceholderMap(templateIndex.getPlaceholderKeys(), placeholderMap);
 
-        VariablePrepare.prepare(wordMLPackage);
         Map<String, String> textPlaceholderMap = new HashMap<>();
         Map<String, Resource> imagePlaceholderMap = new HashMap<>();
 
@@ -83,18 +246,14 @@ public class ReportGenerationService extends Mapper {
                 imagePlaceholderMap.put(entry.getKey(), (Resource) entry.getValue());
             }
         }
-        replaceTextPlaceholders(documentPart, textPlaceholderMap);
-        replaceImagePlaceholders(documentPart, imagePlaceholderMap, wordMLPackage);
-        return wordMLPackage;
-    }
-
-    private void replaceTextPlaceholders(MainDocumentPart documentPart, Map<String, String> textPlaceholderMap) throws JAXBException, Docx4JException {
-        documentPart.variableReplace(textPlaceholderMap);
+        templateIndex.fillText(wordMLPackage, textPlaceholderMap);
+        trace.stage("images");
+        replaceImagePlaceholders(templateIndex, imagePlaceholderMap, wordMLPackage, trace);
     }
 
-    private void replaceImagePlaceholders(MainDocumentPart documentPart, Map<String, Resource> imagePlaceholderMap, WordprocessingMLPackage wordMLPackage) throws Exception {
+    void replaceImagePlaceholders(TemplateIndex templateIndex, Map<String, Resource> imagePlaceholderMap, WordprocessingMLPackage wordMLPackage, RenderTrace trace) {
         for (Map.Entry<String, Resource> entry : imagePlaceholderMap.entrySet()) {
-            addImageToPlaceholder(documentPart, entry.getKey(), entry.getValue(), wordMLPackage);
+            addImageToPlaceholder(templateIndex, entry.getKey(), entry.getValue(), wordMLPackage, trace);
         }
     }
 
@@ -109,97 +268,67 @@ public class ReportGenerationService extends Mapper {
         });
     }
 
-    private void addImageToPlaceholder(MainDocumentPart documentPart, String placeholder, Resource imageResource, WordprocessingMLPackage wordMLPackage) throws Exception {
-        try (InputStream imageInputStream = imageResource.getInputStream()) {
-            byte[] imageBytes = imageInputStream.readAllBytes();
-            BinaryPartAbstractImage imagePart = BinaryPartAbstractImage.createImagePart(wordMLPackage, imageBytes);
-            Inline inline = imagePart.createImageInline(imageResource.getFilename(), "Image Not Available", 0, 1, false);
-            List<Object> elements = documentPart.getJAXBNodesViaXPath("//w:t[text()='" + placeholder + "']", true);
-            if (!elements.isEmpty()) {
-                for (Object element : elements) {
-                    Text placeholderText = extractTextFromElement(element);
-                    if (placeholderText != null) {
-                        Object parent = placeholderText.getParent();
-                        if (parent instanceof R parentRun) {
-                            P parentParagraph = (P) parentRun.getParent();
-                            Object paragraphParent = parentParagraph.getParent();
-                            if (paragraphParent instanceof Tc parentCell) {
-                                replaceContentInTableCell(parentCell, placeholderText, inline);
-                            } else {
-                                replaceContent(documentPart, parentParagraph, inline);
-                            }
-                        } else if (parent instanceof P) {
-                            P parentParagraph = (P) parent;
-                            replaceContent(documentPart, parentParagraph, inline);
-                        } else if (parent instanceof Tc parentCell) {
-                            replaceContentInTableCell(parentCell, placeholderText, inline);
-                        }
-                    } else {
-                        log.warn("Placeholder text not found for key: {}", placeholder);
-                    }
+    private void addImageToPlaceholder(TemplateIndex templateIndex, String placeholder, Resource imageResource, WordprocessingMLPackage wordMLPackage, RenderTrace trace) {
+        List<TemplateIndex.Location> anchors = templateIndex.getImageAnchors(placeholder);
+        if (anchors.isEmpty()) {
+            log.warn("Image placeholder not found for key: {}", placeholder);
+            return;
+        }
+        try {
+            // template images are read in place, other resources once per report
+            ByteBuffer imageBytes = imageResource instanceof ByteBufferResource buffer ? buffer.getByteBuffer() : readImage(imageResource);
+            // the image part has to be related from the part that shows it, e.g. a header, and is shared per size
+            Map<String, BinaryPartAbstractImage> imageParts = new HashMap<>();
+            for (TemplateIndex.Location anchor : anchors) {
+                Part sourcePart = TemplateIndex.getPart(wordMLPackage, anchor);
+                ContentAccessor parent = TemplateIndex.getParent(wordMLPackage, anchor);
+                long width = 200;
+                long height = 100;
+                if (parent instanceof Tc parentCell) {
+                    long cellWidth = getCellWidth(parentCell);
+                    width = cellWidth - 10;
+                    height = cellWidth;
+                }
+                // scaled down to the displayed size, so the part doesn't carry pixels the PDF never shows
+                ImageCache.ProcessedImage image = imageCache.get(imageBytes, (int) width, (int) height);
+                String partKey = sourcePart.getPartName() + "@" + width + "x" + height;
+                BinaryPartAbstractImage imagePart = imageParts.get(partKey);
+                if (imagePart == null) {
+                    imagePart = image == null
+                            ? BinaryPartAbstractImage.createImagePart(wordMLPackage, sourcePart, toArray(imageBytes))
+                            : BinaryPartAbstractImage.createImagePart(wordMLPackage, sourcePart, image.bytes(), image.mimeType());
+                    imageParts.put(partKey, imagePart);
                 }
-            } else {
-                log.warn("Image placeholder not found for key: {}", placeholder);
+                Inline inline = image == null
+                        ? imagePart.createImageInline(imageResource.getFilename(), "Image Not Available", 0, 1, false)
+                        : imagePart.createImageInline(imageResource.getFilename(), "Image Not Available", 0, 1,
+                        width * EMUS_PER_PIXEL, height * EMUS_PER_PIXEL, false);
+                parent.getContent().set(anchor.index(), newImageParagraph(inline, width, height));
+                trace.addImages(1);
             }
         } catch (Exception e) {
+            // the report is still rendered, with the placeholder left in place
             log.error("Error while replacing image placeholder: ", e);
+            renderMetrics.failure(trace.getTemplate(), "images", e);
         }
     }
 
-    private Text extractTextFromElement(Object element) {
-        if (element instanceof JAXBElement<?> jaxbElement) {
-            if (jaxbElement.getValue() instanceof Text) {
-                return (Text) jaxbElement.getValue();
-            }
-        } else if (element instanceof Text) {
-            return (Text) element;
-        }
-        return null;
-    }
-
-    private void replaceContent(MainDocumentPart documentPart, P oldParagraph, Inline imgInline) {
-        int index = documentPart.getContent().indexOf(oldParagraph);
-        if (index != -1) {
-            P imgP = newImageParagraph(imgInline, 200, 100);
-            documentPart.getContent().set(index, imgP);
-        } else {
-            log.warn("Could not find the old paragraph in the document content.");
+    private static ByteBuffer readImage(Resource imageResource) throws IOException {
+        try (InputStream imageInputStream = imageResource.getInputStream()) {
+            return ByteBuffer.wrap(imageInputStream.readAllBytes());
         }
     }
 
-    private void replaceContentInTableCell(Tc cell, Text placeholderText, Inline imgInline) {
-        List<Object> cellContent = cell.getContent();
-        for (Object obj : cellContent) {
-            if (obj instanceof P paragraph) {
-                List<Object> paragraphContent = paragraph.getContent().stream().map(c -> {
-                    if (c instanceof R row) {
-                        return row.getContent();
-                    } else {
-                        return null;
-                    }
-                }).filter(Objects::nonNull).flatMap(List::stream).map(je -> {
-                    if (je instanceof JAXBElement) {
-                        return ((JAXBElement<?>) je).getValue();
-                    } else {
-                        return null;
-                    }
-                }).filter(Objects::nonNull).collect(Collectors.toCollection(ArrayList::new));
-                if (paragraphContent.contains(placeholderText)) {
-                    P resizedImageParagraph = newImageParagraph(imgInline, getCellWidth(cell) - 10, getCellWidth(cell));
-                    int index = cellContent.indexOf(paragraph);
-                    cellContent.set(index, resizedImageParagraph);
-                    return;
-                }
-            }
-        }
-        log.warn("Could not find the placeholder text in the table cell.");
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
     }
 
     public P newImageParagraph(Inline inline, long cellWidthPx, long cellHeightPx) {
         ObjectFactory factory = Context.getWmlObjectFactory();
-        long emusPerPixel = 9525;
-        long cellWidthEmu = cellWidthPx * emusPerPixel;
-        long cellHeightEmu = cellHeightPx * emusPerPixel;
+        long cellWidthEmu = cellWidthPx * EMUS_PER_PIXEL;
+        long cellHeightEmu = cellHeightPx * EMUS_PER_PIXEL;
 
         inline.getExtent().setCx(cellWidthEmu);
         inline.getExtent().setCy(cellHeightEmu);
@@ -224,176 +353,73 @@ public class ReportGenerationService extends Mapper {
         return 0;
     }
 
-    private static void checkTextAlignment(WordprocessingMLPackage wordMLPackage) {
-        Body body = wordMLPackage.getMainDocumentPart().getJaxbElement().getBody();
-        List<Object> paragraphs = body.getContent();
-        for (Object paragraph : paragraphs) {
-            if (paragraph instanceof P) {
-                P p = (P) paragraph;
-                preserveParagraphAlignment(p);
-            }
+    static int addTableToDocument(WordprocessingMLPackage wordMLPackage, TemplateIndex templateIndex, Iterator<? extends Map<?, ?>> records, LinkedHashMap<String, String> columnNames) {
+        TableWriter tableWriter = findTableWriter(wordMLPackage, templateIndex, columnNames);
+        if (tableWriter == null) {
+            return 0;
         }
+        int rows = tableWriter.write(tableWriter.valuesOf(records));
+        log.debug("Added {} rows to table", rows);
+        return rows;
     }
 
-    private static void preserveParagraphAlignment(P p) {
-        PPr ppr = p.getPPr();
-        if (ppr != null) {
-            Jc jc = ppr.getJc();
-            if (jc == null || jc.getVal().equals(JcEnumeration.BOTH)) {
-                jc = new Jc();
-                jc.setVal(JcEnumeration.LEFT);
-                ppr.setJc(jc);
-            }
-        }
-    }
-
-    @Override
-    public void populateFontMappings(Set<String> set, Fonts fonts) {
-        for (String fontName : set) {
-            PhysicalFont font = PhysicalFonts.get(fontName);
-            if (font == null) {
-                font = PhysicalFonts.get("Times New Roman");
-            }
-            if (font != null) {
-                put(fontName, font);
-            }
-        }
-    }
-
-    private void getKeysFromDocxFile(MainDocumentPart documentPart, Set<String> requestedKeys) {
-        List<Object> content = documentPart.getContent();
-        for (Object obj : content) {
-            if (obj instanceof P) {
-                addRequestedKeys((P) obj, requestedKeys);
-            } else if (obj instanceof JAXBElement<?> && ((JAXBElement<?>) obj).getDeclaredType().equals(org.docx4j.wml.Tbl.class)) {
-                processTable((JAXBElement<?>) obj, requestedKeys);
-            }
-        }
+    private static boolean hasTable(TemplateIndex templateIndex, LinkedHashMap<String, String> columnNames) {
+        return templateIndex.getTables().stream().anyMatch(tableAnchor -> columnNames.containsValue(tableAnchor.firstCellValue()));
     }
 
-    private void processTable(JAXBElement<?> tableElement, Set<String> requestedKeys) {
-        org.docx4j.wml.Tbl tbl = (org.docx4j.wml.Tbl) tableElement.getValue();
-        List<Object> rows = tbl.getContent();
-        for (Object row : rows) {
-            if (row instanceof org.docx4j.wml.Tr) {
-                Tr eachRow = (Tr) row;
-                List<Object> cellContent = eachRow.getContent();
-                for (Object cell : cellContent) {
-                    if (cell instanceof JAXBElement<?>) {
-                        processCell((JAXBElement<?>) cell, requestedKeys);
-                    }
-                }
+    /**
+     * A writer for the first table whose header shows one of the column names, or null if there is none.
+     */
+    private static TableWriter findTableWriter(WordprocessingMLPackage wordMLPackage, TemplateIndex templateIndex, LinkedHashMap<String, String> columnNames) {
+        for (TemplateIndex.TableAnchor tableAnchor : templateIndex.getTables()) {
+            if (columnNames.containsValue(tableAnchor.firstCellValue())) {
+                return new TableWriter((Tbl) TemplateIndex.resolve(wordMLPackage, tableAnchor.location()), columnNames);
             }
         }
+        return null;
     }
 
-    private void processCell(JAXBElement<?> cellElement, Set<String> requestedKeys) {
-        org.docx4j.wml.Tc tc = (org.docx4j.wml.Tc) cellElement.getValue();
-        List<Object> cellContent = tc.getContent();
-        for (Object cellItem : cellContent) {
-            if (cellItem instanceof P) {
-                addRequestedKeys((P) cellItem, requestedKeys);
-            }
+    /**
+     * Table records are read one at a time, whether they come as a list, an iterator or a stream.
+     */
+    @SuppressWarnings("unchecked")
+    private static Iterator<? extends Map<?, ?>> tableRecords(Object tableData) {
+        if (tableData instanceof Iterable<?> iterable) {
+            return (Iterator<? extends Map<?, ?>>) iterable.iterator();
+        } else if (tableData instanceof Iterator<?> iterator) {
+            return (Iterator<? extends Map<?, ?>>) iterator;
+        } else if (tableData instanceof Stream<?> stream) {
+            return (Iterator<? extends Map<?, ?>>) stream.iterator();
         }
+        return Collections.emptyIterator();
     }
 
-    private void addRequestedKeys(P p, Set<String> requestedKeys) {
-        StringBuilder textContent = new StringBuilder();
-        List<Object> paragraphContent = p.getContent();
-        for (Object item : paragraphContent) {
-            if (item instanceof R) {
-                R run = (R) item;
-                List<Object> runContent = run.getContent();
-                for (Object runItem : runContent) {
-                    if (runItem instanceof JAXBElement) {
-                        JAXBElement<?> element = (JAXBElement<?>) runItem;
-                        if (element.getName().getLocalPart().equals("t")) {
-                            textContent.append(((Text) element.getValue()).getValue());
-                        }
-                    }
-                }
-            }
-        }
-        String content = textContent.toString();
-        Matcher matcher = pattern.matcher(content);
-        while (matcher.find()) {
-            requestedKeys.add(matcher.group());
-        }
+    /**
+     * A payload read once: its table records go to the row consumer as they are decoded and the remaining
+     * fields are returned.
+     */
+    @FunctionalInterface
+    public interface PayloadSource {
+        Map<String, Object> read(String[] columns, Consumer<String[]> rows) throws IOException;
     }
 
-    private static void addTableToDocument(WordprocessingMLPackage wordMLPackage, List<Map<String, String>> records, LinkedHashMap<String, String> columnNames) {
-        MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
-        List<Object> content = documentPart.getContent();
-
-        // Find the table
-        for (Object obj : content) {
-            if (obj instanceof JAXBElement<?>
-                    && ((JAXBElement) obj).getDeclaredType().getName().equalsIgnoreCase("org.docx4j.wml.Tbl")) {
-                    Object value = ((JAXBElement<?>) obj).getValue();
-                    if (value instanceof Tbl table) {
-                        String firstCellValue = getFirstCellValue(table);
-                        if (columnNames.containsValue(firstCellValue)) {
-                            // Add records as new rows at the top
-                            int rowIndex = 1;
-                            for (Map<String, String> record : records) {
-                                Tr row = createRowFromRecord(columnNames, record);
-                                table.getContent().add(rowIndex++, row); // Insert at the top
-                            }
-                            if (table.getContent().size() > records.size() + 1 && table.getContent().size() > 5) {
-                                table.getContent().remove(records.size() + 2);
-                            }
-                            break; // Once table is found and updated, exit loop
-                        }
-                    }
-                }
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
 
+        CountingOutputStream(OutputStream outputStream) {
+            super(outputStream);
         }
-    }
 
-    private static String getFirstCellValue(Tbl table) {
-        List<Object> tableContent = table.getContent();
-        if (!tableContent.isEmpty() && tableContent.get(0) instanceof Tr firstRow) {
-            List<Object> firstRowCells = firstRow.getContent();
-            if (!firstRowCells.isEmpty() && firstRowCells.get(0) instanceof JAXBElement<?> jaxbElement) {
-                if (jaxbElement.getValue() instanceof Tc firstCell) {
-                    return getCellValue(firstCell);
-                }
-            } else if (!firstRowCells.isEmpty() && firstRowCells.get(0) instanceof Tc firstCell) {
-                return getCellValue(firstCell);
-            }
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
         }
-        return "";
-    }
 
-    private static String getCellValue(Tc cell) {
-        for (Object obj : cell.getContent()) {
-            if (Objects.nonNull(obj)) {
-                return obj.toString();
-            }
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
         }
-        return "";
-    }
-
-    private static Tr createRowFromRecord(LinkedHashMap<String, String> columnNames, Map<String, String> record) {
-        ObjectFactory factory = Context.getWmlObjectFactory();
-        Tr row = factory.createTr();
-
-        // Create cells for each column
-        for (Map.Entry<String, String> entry : columnNames.entrySet()) {
-            String columnName = entry.getKey();
-            String columnValue = record.get(columnName);
-
-            Tc cell = factory.createTc();
-            P paragraph = factory.createP();
-            R run = factory.createR();
-            Text text = factory.createText();
-            text.setValue(columnValue != null ? columnValue : ""); // Set column value, or empty string if null
-            run.getContent().add(text);
-            paragraph.getContent().add(run);
-            cell.getContent().add(paragraph);
-            row.getContent().add(cell);
-        }
-
-        return row;
     }
-}
\ No newline at end of file
+}
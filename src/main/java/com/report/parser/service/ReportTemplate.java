@@ -0,0 +1,54 @@
+package com.report.parser.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A registered template: the compiled document together with what its descriptor declares, the table
+ * columns and the images that are placed into every report. The checksum covers all of it.
+ */
+@Getter
+@RequiredArgsConstructor
+public class ReportTemplate {
+    private final String id;
+    private final String checksum;
+    private final CompiledTemplate compiledTemplate;
+    // payload key to table header, in table order
+    private final LinkedHashMap<String, String> columns;
+    // image placeholder key to image content, read-only and possibly outside the heap
+    private final Map<String, ByteBuffer> images;
+    private final Instant compiledAt;
+
+    public boolean hasTable() {
+        return !columns.isEmpty();
+    }
+
+    /**
+     * The template's images as placeholder values, new resources for every report.
+     */
+    public Map<String, Object> imagePlaceholders() {
+        Map<String, Object> placeholders = new HashMap<>();
+        images.forEach((key, image) -> placeholders.put(key, new ByteBufferResource(image, id + " " + key)));
+        return placeholders;
+    }
+
+    public long getImageBytes() {
+        return images.values().stream().mapToLong(ByteBuffer::remaining).sum();
+    }
+
+    public Summary getSummary() {
+        return new Summary(id, checksum, compiledAt, compiledTemplate.getTemplateIndex().getPlaceholderKeys().size(),
+                columns.keySet().toArray(new String[0]), images.keySet().toArray(new String[0]),
+                compiledTemplate.isDirectRender() ? "direct" : "fo");
+    }
+
+    public record Summary(String id, String checksum, Instant compiledAt, int placeholders, String[] columns,
+                          String[] images, String renderer) {
+    }
+}
@@ -0,0 +1,44 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.OutputStream;
+
+/**
+ * Discovers fonts and renders one report from the default template before the application reports ready.
+ * Runners finish before readiness switches to accepting traffic, so the first real request is not the slow one.
+ */
+@Component
+@Log4j2
+@RequiredArgsConstructor
+public class ReportWarmup implements ApplicationRunner {
+    private final ReportProperties reportProperties;
+    private final FontRegistry fontRegistry;
+    private final ParserService parserService;
+    private final ReportGenerationService reportGenerationService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!reportProperties.getWarmup().isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            fontRegistry.discover();
+            // templates are compiled when the registry starts, exporting the default report primes its renderer
+            reportGenerationService.writePdf(parserService.buildDataAndGetReport(), OutputStream.nullOutputStream());
+            // FO templates and reports that fall back from the direct renderer need the FO stylesheets and FOP primed too
+            if (parserService.getTemplate(null).getCompiledTemplate().isDirectRender()) {
+                reportGenerationService.writeFoPdf(parserService.buildDataAndGetReport(), OutputStream.nullOutputStream());
+            }
+            log.info("Warm-up finished in {}ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            log.error("Warm-up failed, the first reports will be slow: ", e);
+        }
+    }
+}
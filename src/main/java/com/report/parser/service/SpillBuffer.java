@@ -0,0 +1,93 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An intermediate of a render, e.g. the PDF of one part, kept in memory up to the spill threshold and in a
+ * temp file beyond it. The file is deleted on close.
+ */
+final class SpillBuffer implements AutoCloseable {
+    private final DeferredFileOutputStream outputStream;
+    private final List<InputStream> inputStreams = new ArrayList<>();
+
+    SpillBuffer(ReportProperties.Memory properties, String suffix) throws IOException {
+        Path directory = properties.getEffectiveSpillDirectory();
+        Files.createDirectories(directory);
+        this.outputStream = DeferredFileOutputStream.builder()
+                .setThreshold((int) Math.min(Integer.MAX_VALUE, properties.getSpillThreshold()))
+                .setPrefix("report-")
+                .setSuffix(suffix)
+                .setDirectory(directory.toFile())
+                .get();
+    }
+
+    OutputStream outputStream() {
+        return outputStream;
+    }
+
+    /**
+     * The content written so far; nothing can be written after this.
+     */
+    InputStream inputStream() throws IOException {
+        outputStream.close();
+        InputStream inputStream = outputStream.toInputStream();
+        inputStreams.add(inputStream);
+        return inputStream;
+    }
+
+    /**
+     * The content written so far, in a stream the caller closes. It isn't closed with the buffer, a file
+     * that is already open stays readable when it is deleted.
+     */
+    InputStream newInputStream() throws IOException {
+        outputStream.close();
+        return outputStream.toInputStream();
+    }
+
+    long size() {
+        return outputStream.getByteCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+        for (InputStream inputStream : inputStreams) {
+            inputStream.close();
+        }
+        if (!outputStream.isInMemory()) {
+            Files.deleteIfExists(outputStream.getFile().toPath());
+        }
+    }
+
+    /**
+     * PDFBox buffers for documents that may be large: in memory up to the spill threshold, then in a scratch file.
+     */
+    static MemoryUsageSetting memoryUsage(ReportProperties.Memory properties) {
+        return MemoryUsageSetting.setupMixed(properties.getSpillThreshold())
+                .setTempDir(properties.getEffectiveSpillDirectory().toFile());
+    }
+
+    /**
+     * A directory for the files of one render, e.g. the images docx4j writes out for FOP to read.
+     */
+    static Path createDirectory(ReportProperties.Memory properties) throws IOException {
+        Path directory = properties.getEffectiveSpillDirectory();
+        Files.createDirectories(directory);
+        return Files.createTempDirectory(directory, "report-");
+    }
+
+    static void deleteDirectory(Path directory) {
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+}
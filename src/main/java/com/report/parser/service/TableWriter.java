@@ -0,0 +1,226 @@
+package com.report.parser.service;
+
+import org.docx4j.XmlUtils;
+import org.docx4j.jaxb.Context;
+import org.docx4j.model.styles.StyleUtil;
+import org.docx4j.wml.ObjectFactory;
+import org.docx4j.wml.P;
+import org.docx4j.wml.PPr;
+import org.docx4j.wml.R;
+import org.docx4j.wml.RPr;
+import org.docx4j.wml.Tbl;
+import org.docx4j.wml.Tc;
+import org.docx4j.wml.TcPr;
+import org.docx4j.wml.Text;
+import org.docx4j.wml.Tr;
+import org.docx4j.wml.TrPr;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes data rows into a template table in bulk. The row below the header is taken as the template row:
+ * its row, cell, paragraph and run properties are copied once and every data row refers to the copies,
+ * and the finished rows replace it in a single insert, so the cost grows linearly with the number of rows.
+ * A copy per row would cost more than building the row, and docx4j only reads the properties.
+ */
+public class TableWriter {
+    private static final int TEMPLATE_ROW_INDEX = 1;
+
+    private final ObjectFactory factory = Context.getWmlObjectFactory();
+    private final Tbl table;
+    private final String[] columns;
+    // as found in the table, put back by reset
+    private final Object templateRowContent;
+    private final TrPr rowProperties;
+    private final TcPr[] cellProperties;
+    private final PPr[] paragraphProperties;
+    private final RPr[] runProperties;
+
+    public TableWriter(Tbl table, LinkedHashMap<String, String> columnNames) {
+        this.table = table;
+        this.columns = columnNames.keySet().toArray(new String[0]);
+        this.cellProperties = new TcPr[columns.length];
+        this.paragraphProperties = new PPr[columns.length];
+        this.runProperties = new RPr[columns.length];
+
+        Tr templateRow = getTemplateRow(table);
+        this.templateRowContent = templateRow != null ? table.getContent().get(TEMPLATE_ROW_INDEX) : null;
+        this.rowProperties = templateRow != null ? copy(templateRow.getTrPr()) : null;
+        if (templateRow != null) {
+            List<Object> cells = templateRow.getContent();
+            for (int column = 0; column < columns.length && column < cells.size(); column++) {
+                if (XmlUtils.unwrap(cells.get(column)) instanceof Tc templateCell) {
+                    cellProperties[column] = copy(templateCell.getTcPr());
+                    P templateParagraph = getFirstParagraph(templateCell);
+                    if (templateParagraph != null) {
+                        paragraphProperties[column] = copy(templateParagraph.getPPr());
+                        runProperties[column] = getRunProperties(templateParagraph);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The column keys in table order, i.e. the order the values of a row are expected in.
+     */
+    public String[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * Builds every row first and then swaps them in for the template row in one insert.
+     * With no rows at all the template row is kept, so the table still shows an empty line.
+     *
+     * @return the number of rows written
+     */
+    public int write(Iterator<String[]> rows) {
+        List<Object> newRows = new ArrayList<>();
+        while (rows.hasNext()) {
+            newRows.add(createRow(rows.next()));
+        }
+        return insert(newRows);
+    }
+
+    /**
+     * Swaps rows built with {@link #createRow(String[])} in for the template row, keeping it when there are none.
+     *
+     * @return the number of rows inserted
+     */
+    public int insert(List<?> newRows) {
+        if (newRows.isEmpty()) {
+            return 0;
+        }
+        List<Object> content = table.getContent();
+        int insertAt = Math.min(TEMPLATE_ROW_INDEX, content.size());
+        if (getTemplateRow(table) != null) {
+            content.remove(insertAt);
+        }
+        content.addAll(insertAt, newRows);
+        return newRows.size();
+    }
+
+    /**
+     * Takes out the rows an insert put in and puts the template row back, so the table can be written again.
+     */
+    public void reset(int insertedRows) {
+        if (insertedRows == 0) {
+            return;
+        }
+        List<Object> content = table.getContent();
+        int insertAt = Math.min(TEMPLATE_ROW_INDEX, content.size());
+        content.subList(insertAt, insertAt + insertedRows).clear();
+        if (templateRowContent != null) {
+            content.add(insertAt, templateRowContent);
+        }
+    }
+
+    public Tr createRow(String[] values) {
+        return format(createRow(values, columns.length));
+    }
+
+    /**
+     * Builds a row before it is known which table it goes in, e.g. while the payload that picks the document
+     * is still being read. It has no formatting until {@link #format(Tr)} gives it a table's.
+     */
+    public static Tr createRow(String[] values, int columns) {
+        ObjectFactory factory = Context.getWmlObjectFactory();
+        Tr row = factory.createTr();
+        List<Object> cells = row.getContent();
+        for (int column = 0; column < columns; column++) {
+            String value = column < values.length ? values[column] : null;
+            Text text = factory.createText();
+            text.setValue(value != null ? value : "");
+            text.setSpace("preserve");
+            R run = factory.createR();
+            run.getContent().add(text);
+            P paragraph = factory.createP();
+            paragraph.getContent().add(run);
+            Tc cell = factory.createTc();
+            cell.getContent().add(paragraph);
+            cells.add(cell);
+        }
+        return row;
+    }
+
+    /**
+     * Points a row built by {@link #createRow(String[], int)} at this table's copies of the template row properties.
+     */
+    public Tr format(Tr row) {
+        row.setTrPr(rowProperties);
+        List<Object> cells = row.getContent();
+        for (int column = 0; column < columns.length && column < cells.size(); column++) {
+            Tc cell = (Tc) cells.get(column);
+            cell.setTcPr(cellProperties[column]);
+            P paragraph = (P) cell.getContent().get(0);
+            paragraph.setPPr(paragraphProperties[column]);
+            ((R) paragraph.getContent().get(0)).setRPr(runProperties[column]);
+        }
+        return row;
+    }
+
+    /**
+     * Adapts map records, e.g. the tableData list of a payload, to value rows in column order.
+     */
+    public Iterator<String[]> valuesOf(Iterator<? extends Map<?, ?>> records) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public String[] next() {
+                Map<?, ?> record = records.next();
+                String[] values = new String[columns.length];
+                for (int column = 0; column < columns.length; column++) {
+                    Object value = record.get(columns[column]);
+                    values[column] = value != null ? value.toString() : null;
+                }
+                return values;
+            }
+        };
+    }
+
+    private static Tr getTemplateRow(Tbl table) {
+        List<Object> content = table.getContent();
+        if (content.size() > TEMPLATE_ROW_INDEX && XmlUtils.unwrap(content.get(TEMPLATE_ROW_INDEX)) instanceof Tr row) {
+            return row;
+        }
+        return null;
+    }
+
+    private static P getFirstParagraph(Tc cell) {
+        for (Object item : cell.getContent()) {
+            if (XmlUtils.unwrap(item) instanceof P paragraph) {
+                return paragraph;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The properties of the paragraph's first run, or of its paragraph mark when it has no run, e.g. an
+     * empty template cell that is formatted bold.
+     */
+    private RPr getRunProperties(P paragraph) {
+        for (Object item : paragraph.getContent()) {
+            if (XmlUtils.unwrap(item) instanceof R run) {
+                return copy(run.getRPr());
+            }
+        }
+        PPr paragraphProperties = paragraph.getPPr();
+        if (paragraphProperties == null || paragraphProperties.getRPr() == null) {
+            return null;
+        }
+        return copy(StyleUtil.apply(paragraphProperties.getRPr(), factory.createRPr()));
+    }
+
+    private static <T> T copy(T properties) {
+        return properties != null ? XmlUtils.deepCopy(properties) : null;
+    }
+}
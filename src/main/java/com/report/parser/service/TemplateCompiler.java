@@ -0,0 +1,90 @@
+package com.report.parser.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.docx4j.model.datastorage.migration.VariablePrepare;
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Compiles templates for the {@link TemplateRegistry}, which keeps them for as long as they are registered.
+ */
+@Service
+@Log4j2
+@RequiredArgsConstructor
+public class TemplateCompiler {
+    private final RenderMetrics renderMetrics;
+    private final FontRegistry fontRegistry;
+    private final DirectPdfRenderer directPdfRenderer;
+
+    /**
+     * @param directRender whether reports should be written by the direct renderer; the template is only
+     *                     compiled for it if it renders, otherwise its reports go through XSL-FO
+     */
+    public CompiledTemplate compile(String name, byte[] source, boolean directRender) throws Exception {
+        return compile(name, checksum(source), source, directRender);
+    }
+
+    private CompiledTemplate compile(String name, String checksum, byte[] source, boolean directRender) throws Exception {
+        long start = System.nanoTime();
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.load(new ByteArrayInputStream(source));
+        start = recordCompile(name, "load", start);
+        VariablePrepare.prepare(wordMLPackage);
+        start = recordCompile(name, "prepare", start);
+
+        // index a reloaded copy, which has exactly the structure every request gets
+        wordMLPackage = WordprocessingMLPackage.load(new ByteArrayInputStream(save(wordMLPackage, source.length)));
+        start = recordCompile(name, "reload", start);
+        // alignment fixes are applied in the same walk
+        TemplateIndex templateIndex = TemplateIndex.build(wordMLPackage);
+        start = recordCompile(name, "index", start);
+        fontRegistry.register(wordMLPackage);
+        start = recordCompile(name, "fonts", start);
+        byte[] preparedPackage = save(wordMLPackage, source.length);
+        start = recordCompile(name, "save", start);
+        if (directRender) {
+            directRender = checkDirectRender(name, wordMLPackage);
+            recordCompile(name, "direct", start);
+        }
+        log.info("Compiled template {} with {} placeholders", name, templateIndex.getPlaceholderKeys().size());
+        return new CompiledTemplate(name, checksum, templateIndex, preparedPackage, directRender);
+    }
+
+    /**
+     * Renders the prepared template once, so a template the direct renderer can't lay out is found now
+     * rather than on every report.
+     */
+    private boolean checkDirectRender(String name, WordprocessingMLPackage wordMLPackage) throws IOException {
+        try {
+            directPdfRenderer.render(wordMLPackage, OutputStream.nullOutputStream());
+            return true;
+        } catch (DirectPdfRenderer.UnsupportedContentException e) {
+            log.warn("Template {} can't be rendered directly, it uses {}; its reports go through XSL-FO", name, e.getMessage());
+            return false;
+        }
+    }
+
+    private long recordCompile(String name, String stage, long start) {
+        long now = System.nanoTime();
+        renderMetrics.recordCompile(name, stage, now - start);
+        return now;
+    }
+
+    private static byte[] save(WordprocessingMLPackage wordMLPackage, int sizeHint) throws Docx4JException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(sizeHint * 2);
+        wordMLPackage.save(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static String checksum(byte[] source) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(source));
+    }
+}
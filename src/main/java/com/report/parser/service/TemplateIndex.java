@@ -0,0 +1,330 @@
+package com.report.parser.service;
+
+import jakarta.xml.bind.JAXBElement;
+import org.docx4j.XmlUtils;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.JaxbXmlPart;
+import org.docx4j.openpackaging.parts.Part;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+import org.docx4j.openpackaging.parts.relationships.Namespaces;
+import org.docx4j.openpackaging.parts.relationships.RelationshipsPart;
+import org.docx4j.relationships.Relationship;
+import org.docx4j.wml.ContentAccessor;
+import org.docx4j.wml.Jc;
+import org.docx4j.wml.JcEnumeration;
+import org.docx4j.wml.P;
+import org.docx4j.wml.PPr;
+import org.docx4j.wml.Tbl;
+import org.docx4j.wml.Tc;
+import org.docx4j.wml.Text;
+import org.docx4j.wml.Tr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Everything a render needs to know about a prepared template, collected in one walk over the main
+ * document body and every header and footer: the placeholder keys, the text node offsets of each ${key}
+ * token, the paragraphs an image can replace and the tables that can receive rows. Alignment fixes are
+ * found in the same walk and applied to the template itself, so renders never repeat them.
+ * <p>
+ * Locations are recorded as content index paths, which stay valid on every copy of the prepared package.
+ */
+public class TemplateIndex {
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\$\\{[^{}]+\\}");
+
+    private final Set<String> placeholderKeys;
+    private final List<ParagraphPlaceholders> paragraphs;
+    private final Map<String, List<Location>> imageAnchors;
+    private final List<TableAnchor> tables;
+
+    private TemplateIndex(Visitor visitor) {
+        this.placeholderKeys = Collections.unmodifiableSet(visitor.placeholderKeys);
+        this.paragraphs = List.copyOf(visitor.paragraphs);
+        this.imageAnchors = new HashMap<>();
+        visitor.imageAnchors.forEach((key, anchors) -> imageAnchors.put(key, List.copyOf(anchors)));
+        this.tables = List.copyOf(visitor.tables);
+    }
+
+    public static TemplateIndex build(WordprocessingMLPackage wordMLPackage) {
+        Visitor visitor = new Visitor();
+        MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+        visitor.visitPart(null, documentPart.getJaxbElement().getBody());
+        RelationshipsPart relationshipsPart = documentPart.getRelationshipsPart();
+        if (relationshipsPart != null) {
+            for (Relationship relationship : relationshipsPart.getRelationships().getRelationship()) {
+                if (Namespaces.HEADER.equals(relationship.getType()) || Namespaces.FOOTER.equals(relationship.getType())) {
+                    visitor.visitPart(relationship.getId(), root(documentPart, relationship.getId()));
+                }
+            }
+        }
+        visitor.alignmentFixes.forEach(TemplateIndex::preserveParagraphAlignment);
+        return new TemplateIndex(visitor);
+    }
+
+    /**
+     * The ${key} placeholders found anywhere in the template.
+     */
+    public Set<String> getPlaceholderKeys() {
+        return placeholderKeys;
+    }
+
+    /**
+     * Paragraphs whose text node holds nothing but the ${key} token, in document order.
+     */
+    public List<Location> getImageAnchors(String key) {
+        return imageAnchors.getOrDefault(key, List.of());
+    }
+
+    public List<TableAnchor> getTables() {
+        return tables;
+    }
+
+    /**
+     * Replaces every indexed token with its value. Keys without a value are reduced to the bare key,
+     * the same as MainDocumentPart.variableReplace.
+     */
+    public void fillText(WordprocessingMLPackage wordMLPackage, Map<String, String> values) {
+        Map<String, ContentAccessor> roots = new HashMap<>();
+        List<Text> texts = new ArrayList<>();
+        for (ParagraphPlaceholders paragraph : paragraphs) {
+            texts.clear();
+            collectTexts((P) resolve(wordMLPackage, paragraph.location(), roots), texts);
+            List<Token> tokens = paragraph.tokens();
+            // right to left, so the offsets of earlier tokens stay valid
+            for (int i = tokens.size() - 1; i >= 0; i--) {
+                Token token = tokens.get(i);
+                String value = values.get(token.key());
+                replace(texts, token, value != null ? value : token.key());
+            }
+        }
+    }
+
+    public static Object resolve(WordprocessingMLPackage wordMLPackage, Location location) {
+        return resolve(wordMLPackage, location, new HashMap<>());
+    }
+
+    /**
+     * The container holding the located element, e.g. the table cell of a paragraph.
+     */
+    public static ContentAccessor getParent(WordprocessingMLPackage wordMLPackage, Location location) {
+        int[] path = location.path();
+        ContentAccessor parent = root(wordMLPackage.getMainDocumentPart(), location.relationshipId());
+        for (int i = 0; i < path.length - 1; i++) {
+            parent = (ContentAccessor) XmlUtils.unwrap(parent.getContent().get(path[i]));
+        }
+        return parent;
+    }
+
+    /**
+     * The part the location belongs to, i.e. the source part for any relationship added there.
+     */
+    public static Part getPart(WordprocessingMLPackage wordMLPackage, Location location) {
+        MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+        if (location.relationshipId() == null) {
+            return documentPart;
+        }
+        return documentPart.getRelationshipsPart().getPart(location.relationshipId());
+    }
+
+    private static Object resolve(WordprocessingMLPackage wordMLPackage, Location location, Map<String, ContentAccessor> roots) {
+        Object current = roots.computeIfAbsent(location.relationshipId(),
+                relationshipId -> root(wordMLPackage.getMainDocumentPart(), relationshipId));
+        for (int index : location.path()) {
+            current = XmlUtils.unwrap(((ContentAccessor) current).getContent().get(index));
+        }
+        return current;
+    }
+
+    private static ContentAccessor root(MainDocumentPart documentPart, String relationshipId) {
+        if (relationshipId == null) {
+            return documentPart.getJaxbElement().getBody();
+        }
+        Part part = documentPart.getRelationshipsPart().getPart(relationshipId);
+        if (part instanceof JaxbXmlPart<?> xmlPart && xmlPart.getJaxbElement() instanceof ContentAccessor root) {
+            return root;
+        }
+        throw new IllegalStateException("Relationship " + relationshipId + " does not point to a header or footer");
+    }
+
+    private static void collectTexts(ContentAccessor parent, List<Text> texts) {
+        for (Object item : parent.getContent()) {
+            if (item instanceof JAXBElement<?> element) {
+                if (element.getValue() instanceof Text text) {
+                    if (element.getName().getLocalPart().equals("t")) {
+                        texts.add(text);
+                    }
+                    continue;
+                }
+                item = element.getValue();
+            }
+            if (item instanceof ContentAccessor accessor) {
+                collectTexts(accessor, texts);
+            }
+        }
+    }
+
+    private static void replace(List<Text> texts, Token token, String value) {
+        Text start = texts.get(token.startText());
+        Text end = texts.get(token.endText());
+        String suffix = end.getValue().substring(token.endOffset());
+        if (start == end) {
+            setValue(start, start.getValue().substring(0, token.startOffset()) + value + suffix);
+            return;
+        }
+        setValue(start, start.getValue().substring(0, token.startOffset()) + value);
+        for (int i = token.startText() + 1; i < token.endText(); i++) {
+            texts.get(i).setValue("");
+        }
+        setValue(end, suffix);
+    }
+
+    private static void setValue(Text text, String value) {
+        text.setValue(value);
+        // keep leading and trailing blanks, e.g. the filler for missing keys
+        text.setSpace("preserve");
+    }
+
+    private static boolean needsAlignmentFix(P p) {
+        PPr ppr = p.getPPr();
+        if (ppr == null) {
+            return false;
+        }
+        Jc jc = ppr.getJc();
+        return jc == null || jc.getVal().equals(JcEnumeration.BOTH);
+    }
+
+    private static void preserveParagraphAlignment(P p) {
+        Jc jc = new Jc();
+        jc.setVal(JcEnumeration.LEFT);
+        p.getPPr().setJc(jc);
+    }
+
+    private static String getFirstCellValue(Tbl table) {
+        List<Object> tableContent = table.getContent();
+        if (!tableContent.isEmpty() && XmlUtils.unwrap(tableContent.get(0)) instanceof Tr firstRow) {
+            List<Object> firstRowCells = firstRow.getContent();
+            if (!firstRowCells.isEmpty() && XmlUtils.unwrap(firstRowCells.get(0)) instanceof Tc firstCell) {
+                return getCellValue(firstCell);
+            }
+        }
+        return "";
+    }
+
+    private static String getCellValue(Tc cell) {
+        for (Object obj : cell.getContent()) {
+            if (Objects.nonNull(obj)) {
+                return obj.toString();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Walks a part once and records placeholders, image anchors, tables and alignment fixes.
+     */
+    private static class Visitor {
+        private final Set<String> placeholderKeys = new LinkedHashSet<>();
+        private final List<ParagraphPlaceholders> paragraphs = new ArrayList<>();
+        private final Map<String, List<Location>> imageAnchors = new HashMap<>();
+        private final List<TableAnchor> tables = new ArrayList<>();
+        private final List<P> alignmentFixes = new ArrayList<>();
+        private final List<Integer> path = new ArrayList<>();
+        private String relationshipId;
+
+        void visitPart(String relationshipId, ContentAccessor root) {
+            this.relationshipId = relationshipId;
+            visitContent(root, 0);
+        }
+
+        private void visitContent(ContentAccessor parent, int tableDepth) {
+            List<Object> content = parent.getContent();
+            for (int i = 0; i < content.size(); i++) {
+                Object child = XmlUtils.unwrap(content.get(i));
+                path.add(i);
+                if (child instanceof P p) {
+                    visitParagraph(p, tableDepth == 0);
+                } else if (child instanceof Tbl tbl) {
+                    tables.add(new TableAnchor(location(), getFirstCellValue(tbl)));
+                    visitContent(tbl, tableDepth + 1);
+                } else if (child instanceof ContentAccessor accessor) {
+                    visitContent(accessor, tableDepth);
+                }
+                path.remove(path.size() - 1);
+            }
+        }
+
+        private void visitParagraph(P p, boolean blockLevel) {
+            // only paragraphs outside tables get their alignment pinned, as before
+            if (blockLevel && needsAlignmentFix(p)) {
+                alignmentFixes.add(p);
+            }
+
+            List<Text> texts = new ArrayList<>();
+            collectTexts(p, texts);
+            StringBuilder textContent = new StringBuilder();
+            int[] textStarts = new int[texts.size()];
+            for (int i = 0; i < texts.size(); i++) {
+                textStarts[i] = textContent.length();
+                textContent.append(texts.get(i).getValue());
+            }
+
+            List<Token> tokens = new ArrayList<>();
+            Matcher matcher = PLACEHOLDER_PATTERN.matcher(textContent);
+            while (matcher.find()) {
+                String placeholder = matcher.group();
+                String key = placeholder.substring(2, placeholder.length() - 1);
+                int startText = textAt(textStarts, matcher.start());
+                int endText = textAt(textStarts, matcher.end() - 1);
+                tokens.add(new Token(key, startText, matcher.start() - textStarts[startText],
+                        endText, matcher.end() - textStarts[endText]));
+                placeholderKeys.add(placeholder);
+                if (startText == endText && texts.get(startText).getValue().equals(placeholder)) {
+                    imageAnchors.computeIfAbsent(key, k -> new ArrayList<>()).add(location());
+                }
+            }
+            if (!tokens.isEmpty()) {
+                paragraphs.add(new ParagraphPlaceholders(location(), List.copyOf(tokens)));
+            }
+        }
+
+        private Location location() {
+            return new Location(relationshipId, path.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        private static int textAt(int[] textStarts, int position) {
+            int index = 0;
+            while (index + 1 < textStarts.length && textStarts[index + 1] <= position) {
+                index++;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Content index path to an element, starting at the body or at the root of the header or footer
+     * with the given relationship id.
+     */
+    public record Location(String relationshipId, int[] path) {
+        public int index() {
+            return path[path.length - 1];
+        }
+    }
+
+    public record TableAnchor(Location location, String firstCellValue) {
+    }
+
+    private record Token(String key, int startText, int startOffset, int endText, int endOffset) {
+    }
+
+    private record ParagraphPlaceholders(Location location, List<Token> tokens) {
+    }
+}
@@ -0,0 +1,287 @@
+package com.report.parser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.report.parser.config.ReportProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every template the application renders, compiled at startup so requests only ever pick one by id.
+ * A template is a .docx file whose name is its id, with an optional {@code <id>.json} descriptor next to it
+ * that declares the table columns, the images placed into every report and the renderer:
+ * <pre>
+ * {"columns": {"slNo": "S/N", "name": "Name"}, "images": {"profilePhoto": "profile.png"}, "renderer": "direct"}
+ * </pre>
+ * The renderer is "fo", the default, or "direct" for simple templates that {@link DirectPdfRenderer} can write.
+ * Templates come from the configured directory, which is watched: a changed template, descriptor or image
+ * is recompiled in the background and swapped in once it compiled, so requests keep the previous version
+ * until then. Without a directory the templates bundled under report-templates/ are used.
+ */
+@Service
+@Log4j2
+@RequiredArgsConstructor
+public class TemplateRegistry {
+    private static final String BUNDLED_TEMPLATES = "classpath*:report-templates/*.docx";
+    private static final String TEMPLATE_SUFFIX = ".docx";
+    private static final String DESCRIPTOR_SUFFIX = ".json";
+
+    private final ReportProperties reportProperties;
+    private final TemplateCompiler templateCompiler;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, ReportTemplate> templates = new ConcurrentHashMap<>();
+    // image files each template was compiled with, so a changed image recompiles the templates using it
+    private final Map<String, Set<String>> imageFiles = new ConcurrentHashMap<>();
+    private WatchService watchService;
+
+    @PostConstruct
+    public void load() throws IOException {
+        ReportProperties.Templates config = reportProperties.getTemplates();
+        long start = System.nanoTime();
+        if (config.getDirectory() == null) {
+            for (Resource template : new PathMatchingResourcePatternResolver().getResources(BUNDLED_TEMPLATES)) {
+                register(idOf(template.getFilename()), template);
+            }
+        } else {
+            Path directory = config.getDirectory();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + TEMPLATE_SUFFIX)) {
+                for (Path file : files) {
+                    if (isTemplate(file.getFileName().toString())) {
+                        register(idOf(file.getFileName().toString()), new FileSystemResource(file));
+                    }
+                }
+            }
+            if (config.isWatch()) {
+                watch(directory);
+            }
+        }
+        log.info("Registered {} templates in {}ms", templates.size(), (System.nanoTime() - start) / 1_000_000);
+        if (!templates.containsKey(config.getDefaultId())) {
+            log.warn("Default template {} is not registered", config.getDefaultId());
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * @param id the template id, or null for the default template
+     */
+    public ReportTemplate get(String id) {
+        String templateId = id != null ? id : reportProperties.getTemplates().getDefaultId();
+        ReportTemplate template = templates.get(templateId);
+        if (template == null) {
+            throw new UnknownTemplateException(templateId);
+        }
+        return template;
+    }
+
+    public List<ReportTemplate.Summary> getSummaries() {
+        return templates.values().stream()
+                .map(ReportTemplate::getSummary)
+                .sorted(Comparator.comparing(ReportTemplate.Summary::id))
+                .toList();
+    }
+
+    /**
+     * Compiles a template and swaps it in. A template that fails to compile is logged and, if it was
+     * registered before, keeps its previous version.
+     */
+    private boolean register(String id, Resource template) {
+        try {
+            templates.put(id, compile(id, template));
+            return true;
+        } catch (Exception e) {
+            log.error("Unable to compile template {}: ", id, e);
+            return false;
+        }
+    }
+
+    private ReportTemplate compile(String id, Resource template) throws Exception {
+        byte[] source = read(template);
+        Resource descriptorResource = template.createRelative(id + DESCRIPTOR_SUFFIX);
+        byte[] descriptorSource = descriptorResource.exists() ? read(descriptorResource) : "{}".getBytes(StandardCharsets.UTF_8);
+        TemplateDescriptor descriptor = objectMapper.readValue(descriptorSource, TemplateDescriptor.class);
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(source);
+        digest.update((byte) 0);
+        digest.update(descriptorSource);
+        Map<String, ByteBuffer> images = new LinkedHashMap<>();
+        for (Map.Entry<String, String> image : descriptor.images().entrySet()) {
+            byte[] content = read(template.createRelative(image.getValue()));
+            digest.update((byte) 0);
+            digest.update(content);
+            images.put(image.getKey(), hold(content));
+        }
+
+        CompiledTemplate compiledTemplate = templateCompiler.compile(id, source, descriptor.isDirectRender());
+        if (!descriptor.columns().isEmpty() && compiledTemplate.getTemplateIndex().getTables().stream()
+                .noneMatch(table -> descriptor.columns().containsValue(table.firstCellValue()))) {
+            log.warn("Template {} has no table headed by one of its columns {}", id, descriptor.columns().values());
+        }
+        imageFiles.put(id, Set.copyOf(descriptor.images().values()));
+        return new ReportTemplate(id, HexFormat.of().formatHex(digest.digest()), compiledTemplate,
+                descriptor.columns(), images, Instant.now());
+    }
+
+    /**
+     * Large images are copied outside the heap, where they don't count against it for as long as the
+     * template is registered. A copy rather than a mapping of the file, which a reload may rewrite.
+     */
+    private ByteBuffer hold(byte[] content) {
+        if (content.length <= reportProperties.getMemory().getOffHeapImageBytes()) {
+            return ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+        return ByteBuffer.allocateDirect(content.length).put(content).flip().asReadOnlyBuffer();
+    }
+
+    private void watch(Path directory) throws IOException {
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        Thread.ofPlatform().daemon().name("template-watcher").start(() -> {
+            try {
+                while (true) {
+                    reload(directory, awaitChanges());
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                log.debug("Stopped watching {}", directory);
+            }
+        });
+    }
+
+    /**
+     * Blocks until files change and collects changes until the directory has been quiet for the reload delay.
+     *
+     * @return the changed file names, or null if events were lost and everything has to be reloaded
+     */
+    private Set<String> awaitChanges() throws InterruptedException {
+        long quietMillis = reportProperties.getTemplates().getReloadDelay().toMillis();
+        Set<String> changed = new HashSet<>();
+        boolean overflow = false;
+        WatchKey key = watchService.take();
+        while (key != null) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                } else {
+                    changed.add(event.context().toString());
+                }
+            }
+            key.reset();
+            key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS);
+        }
+        return overflow ? null : changed;
+    }
+
+    private void reload(Path directory, Set<String> changedFiles) {
+        Set<String> ids = new HashSet<>();
+        if (changedFiles == null) {
+            ids.addAll(templates.keySet());
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + TEMPLATE_SUFFIX)) {
+                files.forEach(file -> addAffectedIds(ids, file.getFileName().toString()));
+            } catch (IOException e) {
+                log.error("Unable to list templates in {}: ", directory, e);
+            }
+        } else {
+            changedFiles.forEach(file -> addAffectedIds(ids, file));
+        }
+        for (String id : ids) {
+            Path template = directory.resolve(id + TEMPLATE_SUFFIX);
+            if (Files.isRegularFile(template)) {
+                if (register(id, new FileSystemResource(template))) {
+                    log.info("Reloaded template {}", id);
+                }
+            } else if (templates.remove(id) != null) {
+                imageFiles.remove(id);
+                log.info("Removed template {}", id);
+            }
+        }
+    }
+
+    /**
+     * Adds the ids of the templates a changed file belongs to: its own template or descriptor, or the
+     * templates that use it as an image.
+     */
+    private void addAffectedIds(Set<String> ids, String fileName) {
+        if (isTemplate(fileName) || fileName.endsWith(DESCRIPTOR_SUFFIX)) {
+            ids.add(idOf(fileName));
+        }
+        imageFiles.forEach((id, images) -> {
+            if (images.contains(fileName)) {
+                ids.add(id);
+            }
+        });
+    }
+
+    private static boolean isTemplate(String fileName) {
+        // Word keeps a ~$ lock file next to a document that is open for editing
+        return fileName.endsWith(TEMPLATE_SUFFIX) && !fileName.startsWith("~$") && !fileName.startsWith(".");
+    }
+
+    private static String idOf(String fileName) {
+        return fileName.substring(0, fileName.lastIndexOf('.'));
+    }
+
+    private static byte[] read(Resource resource) throws IOException {
+        try (InputStream inputStream = resource.getInputStream()) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    /**
+     * The sidecar descriptor of a template. All parts are optional: without columns the template has no
+     * data table, without images only text is filled in, without a renderer reports go through XSL-FO.
+     */
+    record TemplateDescriptor(LinkedHashMap<String, String> columns, Map<String, String> images, String renderer) {
+        private static final Set<String> RENDERERS = Set.of("fo", "direct");
+
+        TemplateDescriptor {
+            columns = columns != null ? columns : new LinkedHashMap<>();
+            images = images != null ? images : Map.of();
+            renderer = renderer != null ? renderer : "fo";
+            if (!RENDERERS.contains(renderer)) {
+                throw new IllegalArgumentException("Unknown renderer " + renderer + ", expected one of " + RENDERERS);
+            }
+        }
+
+        boolean isDirectRender() {
+            return renderer.equals("direct");
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.report.parser.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class UnknownTemplateException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public UnknownTemplateException(String id) {
+        super("Unknown template " + id);
+    }
+}
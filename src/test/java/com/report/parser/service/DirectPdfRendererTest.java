@@ -0,0 +1,202 @@
+package com.report.parser.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.report.parser.config.ReportProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.docx4j.Docx4J;
+import org.docx4j.XmlUtils;
+import org.docx4j.convert.out.FOSettings;
+import org.docx4j.model.table.TblFactory;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+import org.docx4j.wml.ObjectFactory;
+import org.docx4j.wml.P;
+import org.docx4j.wml.Tbl;
+import org.docx4j.wml.Tc;
+import org.docx4j.wml.Tr;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectPdfRendererTest {
+    private static final ObjectFactory FACTORY = new ObjectFactory();
+    private static final String WML = "xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"";
+
+    private final DirectPdfRenderer directPdfRenderer = new DirectPdfRenderer(new ReportProperties());
+
+    @Test
+    void writesParagraphsAndTablesOverSeveralPages() throws Exception {
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+        MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+        documentPart.addParagraphOfText("Family Members");
+        Tbl table = TblFactory.createTable(80, 2, 4500);
+        for (int i = 0; i < table.getContent().size(); i++) {
+            Tr row = (Tr) table.getContent().get(i);
+            setText((Tc) row.getContent().get(0), i == 0 ? "Name" : "Member " + i);
+            setText((Tc) row.getContent().get(1), i == 0 ? "Relationship" : "Friend");
+        }
+        // the first row repeats on every page
+        Tr header = (Tr) table.getContent().get(0);
+        header.setTrPr(FACTORY.createTrPr());
+        header.getTrPr().getCnfStyleOrDivIdOrGridBefore().add(FACTORY.createCTTrPrBaseTblHeader(FACTORY.createBooleanDefaultTrue()));
+        documentPart.getContent().add(table);
+        new FontRegistry(new ReportProperties()).register(wordMLPackage);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        directPdfRenderer.render(wordMLPackage, outputStream);
+
+        try (PDDocument document = PDDocument.load(outputStream.toByteArray())) {
+            assertTrue(document.getNumberOfPages() > 1);
+            PDFTextStripper stripper = new PDFTextStripper();
+            String text = stripper.getText(document);
+            assertTrue(text.contains("Family Members"));
+            assertTrue(text.contains("Member 79"));
+            stripper.setStartPage(2);
+            stripper.setEndPage(2);
+            assertTrue(stripper.getText(document).startsWith("Name Relationship"));
+        }
+    }
+
+    @Test
+    void breaksPagesWhereXslFoDoes() throws Exception {
+        FontRegistry fontRegistry = new FontRegistry(new ReportProperties());
+        for (int rows : new int[]{40, 61, 62, 150, 400}) {
+            WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+            MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+            documentPart.addStyledParagraphOfText("Heading1", "My Profile");
+            documentPart.addParagraphOfText("I am a skilled Java Spring Boot developer with over 5 years of experience in building "
+                    + "robust, scalable, and efficient backend systems.");
+            Tbl table = TblFactory.createTable(rows, 3, 3000);
+            for (int i = 0; i < rows; i++) {
+                Tr row = (Tr) table.getContent().get(i);
+                for (int j = 0; j < 3; j++) {
+                    setText((Tc) row.getContent().get(j), j == 0 ? String.valueOf(i) : "Name " + i);
+                }
+            }
+            documentPart.getContent().add(table);
+            fontRegistry.register(wordMLPackage);
+
+            ByteArrayOutputStream direct = new ByteArrayOutputStream();
+            directPdfRenderer.render(wordMLPackage, direct);
+            ByteArrayOutputStream fo = new ByteArrayOutputStream();
+            FOSettings settings = fontRegistry.newFoSettings();
+            settings.setOpcPackage(wordMLPackage);
+            Docx4J.toFO(settings, fo, Docx4J.FLAG_NONE);
+
+            try (PDDocument directDocument = PDDocument.load(direct.toByteArray());
+                 PDDocument foDocument = PDDocument.load(fo.toByteArray())) {
+                assertEquals(foDocument.getNumberOfPages(), directDocument.getNumberOfPages(), rows + " rows");
+            }
+        }
+    }
+
+    @Test
+    void writesTheBundledTemplateAsXslFoDoes() throws Exception {
+        ReportProperties reportProperties = new ReportProperties();
+        reportProperties.getDocumentCache().setEnabled(false);
+        FontRegistry fontRegistry = new FontRegistry(reportProperties);
+        RenderMetrics renderMetrics = new RenderMetrics(new SimpleMeterRegistry(), reportProperties);
+        RenderMemory renderMemory = new RenderMemory(reportProperties);
+        ParallelPdfRenderer parallelPdfRenderer = new ParallelPdfRenderer(reportProperties, fontRegistry);
+        ReportGenerationService reportGenerationService = new ReportGenerationService(new ImageCache(reportProperties),
+                renderMetrics, fontRegistry, parallelPdfRenderer, directPdfRenderer, renderMemory,
+                new DocumentCache(reportProperties, renderMemory), reportProperties);
+        CompiledTemplate template = new TemplateCompiler(renderMetrics, fontRegistry, directPdfRenderer)
+                .compile("MyProfile", read("report-templates/MyProfile.docx"), true);
+        assertTrue(template.isDirectRender());
+        Map<String, Object> images = Map.of("profilePhoto",
+                new ByteBufferResource(ByteBuffer.wrap(read("report-templates/profile.png")), "profile.png"));
+        LinkedHashMap<String, String> columnMap = new LinkedHashMap<>();
+        columnMap.put("slNo", "S/N");
+        columnMap.put("name", "Name");
+        columnMap.put("relationship", "Relationship");
+        columnMap.put("mobile", "Mobile");
+
+        try {
+            // the table runs onto a second and a third page
+            for (int rows : new int[]{30, 120}) {
+                PreparedReport report = reportGenerationService.prepareReport("MyProfile", payload(rows), images, template, columnMap);
+                ByteArrayOutputStream direct = new ByteArrayOutputStream();
+                directPdfRenderer.render(report.document(), direct);
+                ByteArrayOutputStream fo = new ByteArrayOutputStream();
+                reportGenerationService.writeFoPdf(report, fo);
+
+                try (PDDocument directDocument = PDDocument.load(direct.toByteArray());
+                     PDDocument foDocument = PDDocument.load(fo.toByteArray())) {
+                    assertEquals(foDocument.getNumberOfPages(), directDocument.getNumberOfPages(), rows + " rows");
+                    PDFTextStripper stripper = new PDFTextStripper();
+                    for (int page = 1; page <= foDocument.getNumberOfPages(); page++) {
+                        stripper.setStartPage(page);
+                        stripper.setEndPage(page);
+                        // lines may wrap elsewhere with other fonts, the words on each page have to match
+                        assertEquals(words(stripper.getText(foDocument)), words(stripper.getText(directDocument)), rows + " rows, page " + page);
+                    }
+                }
+            }
+        } finally {
+            parallelPdfRenderer.shutdown();
+        }
+    }
+
+    @Test
+    void refusesContentItCantLayOutWithoutWritingAnything() throws Exception {
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+        wordMLPackage.getMainDocumentPart().addParagraphOfText("Page");
+        wordMLPackage.getMainDocumentPart().getContent().add(XmlUtils.unmarshalString(
+                "<w:p " + WML + "><w:fldSimple w:instr=\"PAGE\"><w:r><w:t>1</w:t></w:r></w:fldSimple></w:p>"));
+        new FontRegistry(new ReportProperties()).register(wordMLPackage);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        DirectPdfRenderer.UnsupportedContentException exception = assertThrows(DirectPdfRenderer.UnsupportedContentException.class,
+                () -> directPdfRenderer.render(wordMLPackage, outputStream));
+        assertEquals("w:fldSimple", exception.getMessage());
+        assertEquals(0, outputStream.size());
+    }
+
+    /**
+     * Payload.json with the given number of table rows.
+     */
+    private static Map<String, Object> payload(int rows) throws Exception {
+        Map<String, Object> payload;
+        try (InputStream inputStream = new ClassPathResource("Payload.json").getInputStream()) {
+            payload = new ObjectMapper().readValue(inputStream, new TypeReference<HashMap<String, Object>>() {
+            });
+        }
+        List<Map<String, String>> tableData = new ArrayList<>();
+        for (int i = 1; i <= rows; i++) {
+            tableData.add(Map.of("slNo", String.valueOf(i), "name", "Contact " + i, "relationship", "Friend", "mobile", "98000" + i));
+        }
+        payload.put("tableData", tableData);
+        return payload;
+    }
+
+    private static byte[] read(String path) throws Exception {
+        try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private static String words(String text) {
+        return text.replaceAll("\\s+", " ").trim();
+    }
+
+    private static void setText(Tc cell, String text) throws Exception {
+        ((P) cell.getContent().get(0)).getContent().add(XmlUtils.unmarshalString(
+                "<w:r " + WML + "><w:t>" + text + "</w:t></w:r>"));
+    }
+}
@@ -0,0 +1,128 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentCacheTest {
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private final ReportProperties properties = new ReportProperties();
+    private final RenderMemory renderMemory = renderMemory(properties);
+    private final DocumentCache documentCache = new DocumentCache(properties, renderMemory);
+
+    @Test
+    void keysIgnoreTableRowsAndFieldOrder() throws Exception {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("name", "John Doe");
+        fields.put("city", "Pune");
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("city", "Pune");
+        reordered.put("name", "John Doe");
+        reordered.put("tableData", List.of(Map.of("slNo", "1")));
+
+        assertEquals(documentCache.key("v1", fields), documentCache.key("v1", reordered));
+        assertNotEquals(documentCache.key("v1", fields), documentCache.key("v2", fields));
+        assertNotEquals(documentCache.key("v1", fields), documentCache.key("v1", Map.of("name", "Jane Smith")));
+    }
+
+    @Test
+    void handsOutTheDocumentOfAnExportedReport() throws Exception {
+        assertTrue(documentCache.checkOut("a").isEmpty());
+        WordprocessingMLPackage document = exported("a");
+
+        DocumentCache.Entry entry = documentCache.checkOut("a").orElseThrow();
+
+        assertSame(document, entry.document());
+        assertEquals(1, documentCache.getStats().hits());
+        assertEquals(1, documentCache.getStats().misses());
+    }
+
+    @Test
+    void givesEveryReportItsOwnDocument() throws Exception {
+        WordprocessingMLPackage document = exported("a");
+
+        // the first report takes the kept document, the one built alongside it prepares its own
+        assertSame(document, documentCache.checkOut("a").orElseThrow().document());
+        assertTrue(documentCache.checkOut("a").isEmpty());
+        DocumentCache.Pending other = documentCache.track(WordprocessingMLPackage.createPackage(), "a", null, 0);
+        DocumentCache.Pending kept = documentCache.track(document, "a", null, 0);
+
+        // both are kept in turn, the one exported last replaces the other
+        documentCache.checkIn(other, renderMemory.reserve(MEGABYTE));
+        documentCache.checkIn(kept, renderMemory.reserve(MEGABYTE));
+        assertEquals(1, documentCache.getStats().size());
+        assertSame(document, documentCache.checkOut("a").orElseThrow().document());
+    }
+
+    @Test
+    void dropsDocumentsWhoseExportFailed() throws Exception {
+        documentCache.track(WordprocessingMLPackage.createPackage(), "a", null, 0);
+
+        // never checked in, the export failed
+        assertTrue(documentCache.checkOut("a").isEmpty());
+        assertEquals(0, documentCache.getStats().size());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyKeptDocument() throws Exception {
+        properties.getDocumentCache().setMaxEntries(2);
+        exported("a");
+        exported("b");
+        exported("c");
+
+        assertTrue(documentCache.checkOut("a").isEmpty());
+        assertTrue(documentCache.checkOut("b").isPresent());
+        assertTrue(documentCache.checkOut("c").isPresent());
+        assertEquals(1, documentCache.getStats().evictions());
+    }
+
+    @Test
+    void keepsNothingWhenDisabled() throws Exception {
+        properties.getDocumentCache().setEnabled(false);
+        exported("a");
+
+        assertTrue(documentCache.checkOut("a").isEmpty());
+        assertEquals(0, documentCache.getStats().size());
+    }
+
+    @Test
+    void holdsRenderMemoryUntilAnExportNeedsIt() throws Exception {
+        exported("a");
+        exported("b");
+        assertEquals(2 * MEGABYTE, renderMemory.getReservedBytes());
+
+        // the budget is 10MB, so the export only fits once the least recently kept document is dropped
+        try (RenderMemory.Reservation ignored = renderMemory.reserve(9 * MEGABYTE)) {
+            assertEquals(10 * MEGABYTE, renderMemory.getReservedBytes());
+            assertTrue(documentCache.checkOut("a").isEmpty());
+        }
+        assertTrue(documentCache.checkOut("b").isPresent());
+        assertEquals(0, renderMemory.getReservedBytes());
+    }
+
+    private WordprocessingMLPackage exported(String key) throws Exception {
+        WordprocessingMLPackage document = WordprocessingMLPackage.createPackage();
+        try (RenderMemory.Reservation reservation = renderMemory.reserve(2 * MEGABYTE)) {
+            documentCache.checkIn(documentCache.track(document, key, null, 0), reservation);
+        }
+        return document;
+    }
+
+    private static RenderMemory renderMemory(ReportProperties properties) {
+        properties.getMemory().setMaxBytes(10 * MEGABYTE);
+        properties.getMemory().setMaxWait(Duration.ofMillis(50));
+        properties.getDocumentCache().setEntryBytes(MEGABYTE);
+        return new RenderMemory(properties);
+    }
+}
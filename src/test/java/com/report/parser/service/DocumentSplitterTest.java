@@ -0,0 +1,168 @@
+package com.report.parser.service;
+
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.WordprocessingML.BinaryPartAbstractImage;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+import org.docx4j.wml.Body;
+import org.docx4j.wml.Drawing;
+import org.docx4j.wml.ObjectFactory;
+import org.docx4j.wml.P;
+import org.docx4j.wml.PPr;
+import org.docx4j.wml.R;
+import org.docx4j.wml.SectPr;
+import org.docx4j.wml.Tbl;
+import org.docx4j.wml.Tr;
+import org.docx4j.wml.TrPr;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentSplitterTest {
+    private static final ObjectFactory FACTORY = new ObjectFactory();
+
+    @Test
+    void cutsLongTablesIntoPiecesOfOnePart() {
+        Body body = FACTORY.createBody();
+        body.getContent().add(paragraph());
+        body.getContent().add(table(5));
+        body.setSectPr(pageNumbersFrom(3));
+        body.getSectPr().getEGHdrFtrReferences().add(FACTORY.createFooterReference());
+
+        List<DocumentSplitter.Part> parts = DocumentSplitter.cut(body, 2);
+
+        assertEquals(1, parts.size());
+        List<DocumentSplitter.Piece> pieces = parts.get(0).pieces();
+        assertEquals(3, pieces.size());
+        assertEquals(2, pieces.get(0).content().size());
+        // only the first chunk has the header row, the others add rows to its table
+        assertEquals(3, ((Tbl) pieces.get(0).content().get(1)).getContent().size());
+        Tbl last = (Tbl) pieces.get(2).content().get(0);
+        assertEquals(1, last.getContent().size());
+        assertFalse(isHeader((Tr) last.getContent().get(0)));
+        assertEquals(BigInteger.valueOf(3), pieces.get(0).sectPr().getPgNumType().getStart());
+        assertEquals(1, pieces.get(0).sectPr().getEGHdrFtrReferences().size());
+        assertTrue(pieces.get(1).sectPr().getEGHdrFtrReferences().isEmpty());
+    }
+
+    @Test
+    void cutsAtSectionBreaksAndLeavesShortReportsWhole() throws Exception {
+        Body body = FACTORY.createBody();
+        P sectionEnd = paragraph();
+        sectionEnd.setPPr(new PPr());
+        sectionEnd.getPPr().setSectPr(pageNumbersFrom(1));
+        body.getContent().add(sectionEnd);
+        body.getContent().add(table(2));
+
+        List<DocumentSplitter.Part> parts = DocumentSplitter.cut(body, 2);
+
+        assertEquals(2, parts.size());
+        DocumentSplitter.Piece first = parts.get(0).pieces().get(0);
+        DocumentSplitter.Piece second = parts.get(1).pieces().get(0);
+        assertTrue(first.content().isEmpty());
+        assertEquals(BigInteger.ONE, first.sectPr().getPgNumType().getStart());
+        assertNull(((P) second.content().get(0)).getPPr().getSectPr());
+        assertSame(body.getContent().get(1), second.content().get(1));
+
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+        wordMLPackage.getMainDocumentPart().getContent().add(table(2));
+        assertTrue(DocumentSplitter.split(wordMLPackage, 2).isEmpty());
+    }
+
+    @Test
+    void savesPiecesFromACopyWithOnlyTheImagesTheyShow() throws Exception {
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+        MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+        BinaryPartAbstractImage image = BinaryPartAbstractImage.createImagePart(wordMLPackage, png());
+        P photo = paragraph();
+        R run = FACTORY.createR();
+        Drawing drawing = FACTORY.createDrawing();
+        drawing.getAnchorOrInline().add(image.createImageInline("photo", "photo", 1, 2, false));
+        run.getContent().add(drawing);
+        photo.getContent().add(run);
+        documentPart.getContent().add(photo);
+        documentPart.getContent().add(table(5));
+        List<Object> content = List.copyOf(documentPart.getContent());
+
+        List<List<byte[]>> parts = DocumentSplitter.split(wordMLPackage, 2);
+
+        assertEquals(content, documentPart.getContent());
+        assertEquals(1, parts.size());
+        assertEquals(3, parts.get(0).size());
+        assertEquals(1, images(parts.get(0).get(0)));
+        assertEquals(0, images(parts.get(0).get(1)));
+        assertEquals(0, images(parts.get(0).get(2)));
+    }
+
+    @Test
+    void joinsThePiecesOfAPartIntoOneTable() {
+        String first = fo("<fo:block>Before</fo:block><fo:table><fo:table-header><fo:table-row>H</fo:table-row></fo:table-header>"
+                + "<fo:table-body><fo:table-row>1</fo:table-row></fo:table-body></fo:table>");
+        String second = fo("<fo:table><fo:table-body><fo:table-row>2<fo:table><fo:table-body><fo:table-row>nested</fo:table-row>"
+                + "</fo:table-body></fo:table></fo:table-row></fo:table-body></fo:table>");
+        String last = fo("<fo:table><fo:table-body><fo:table-row>3</fo:table-row></fo:table-body></fo:table><fo:block>After</fo:block>");
+
+        assertEquals(fo("<fo:block>Before</fo:block><fo:table><fo:table-header><fo:table-row>H</fo:table-row></fo:table-header>"
+                        + "<fo:table-body><fo:table-row>1</fo:table-row><fo:table-row>2<fo:table><fo:table-body><fo:table-row>nested</fo:table-row>"
+                        + "</fo:table-body></fo:table></fo:table-row><fo:table-row>3</fo:table-row></fo:table-body></fo:table><fo:block>After</fo:block>"),
+                DocumentSplitter.join(List.of(first, second, last)));
+    }
+
+    private static String fo(String flow) {
+        return "<fo:root><fo:page-sequence><fo:flow flow-name=\"xsl-region-body\">" + flow + "</fo:flow></fo:page-sequence></fo:root>";
+    }
+
+    private static byte[] png() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB), "png", outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static long images(byte[] piece) throws Exception {
+        return WordprocessingMLPackage.load(new ByteArrayInputStream(piece)).getParts().getParts().values().stream()
+                .filter(BinaryPartAbstractImage.class::isInstance)
+                .count();
+    }
+
+    private static P paragraph() {
+        return FACTORY.createP();
+    }
+
+    private static SectPr pageNumbersFrom(int start) {
+        SectPr sectPr = FACTORY.createSectPr();
+        sectPr.setPgNumType(FACTORY.createCTPageNumber());
+        sectPr.getPgNumType().setStart(BigInteger.valueOf(start));
+        return sectPr;
+    }
+
+    /**
+     * A table with one repeated header row and the given number of data rows.
+     */
+    private static Tbl table(int rows) {
+        Tbl table = FACTORY.createTbl();
+        Tr header = FACTORY.createTr();
+        header.setTrPr(FACTORY.createTrPr());
+        header.getTrPr().getCnfStyleOrDivIdOrGridBefore().add(FACTORY.createCTTrPrBaseTblHeader(FACTORY.createBooleanDefaultTrue()));
+        table.getContent().add(header);
+        for (int i = 0; i < rows; i++) {
+            table.getContent().add(FACTORY.createTr());
+        }
+        return table;
+    }
+
+    private static boolean isHeader(Tr row) {
+        TrPr rowProperties = row.getTrPr();
+        return rowProperties != null && rowProperties.getCnfStyleOrDivIdOrGridBefore().stream()
+                .anyMatch(element -> element.getName().getLocalPart().equals("tblHeader"));
+    }
+}
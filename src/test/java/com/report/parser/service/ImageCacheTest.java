@@ -0,0 +1,64 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ImageCacheTest {
+
+    @Test
+    void scalesDownToTheTargetSizeAndReusesTheResult() throws Exception {
+        ImageCache imageCache = new ImageCache(new ReportProperties());
+        byte[] source = png(800, 400);
+
+        ImageCache.ProcessedImage image = imageCache.get(source, 100, 50);
+        // two pixels per displayed pixel by default
+        assertEquals(200, image.width());
+        assertEquals(100, image.height());
+        assertEquals("image/png", image.mimeType());
+        assertSame(image, imageCache.get(source.clone(), 100, 50));
+        assertEquals(1, imageCache.getStats().hits());
+    }
+
+    @Test
+    void keepsSmallImagesAndSkipsUnknownFormats() throws Exception {
+        ImageCache imageCache = new ImageCache(new ReportProperties());
+        byte[] source = png(40, 20);
+
+        assertArrayEquals(source, imageCache.get(source, 100, 50).bytes());
+        assertNull(imageCache.get(new byte[]{1, 2, 3}, 100, 50));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedImage() throws Exception {
+        ReportProperties properties = new ReportProperties();
+        properties.getImages().setMaxEntries(2);
+        ImageCache imageCache = new ImageCache(properties);
+        byte[] source = png(800, 400);
+
+        imageCache.get(source, 100, 50);
+        imageCache.get(source, 50, 25);
+        imageCache.get(source, 100, 50);
+        imageCache.get(source, 20, 10);
+
+        assertEquals(1, imageCache.getStats().evictions());
+        imageCache.get(source, 100, 50);
+        assertEquals(2, imageCache.getStats().hits());
+    }
+
+    private static byte[] png(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0xFF336699);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", outputStream);
+        return outputStream.toByteArray();
+    }
+}
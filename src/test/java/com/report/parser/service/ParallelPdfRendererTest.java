@@ -0,0 +1,118 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.docx4j.Docx4J;
+import org.docx4j.XmlUtils;
+import org.docx4j.convert.out.FOSettings;
+import org.docx4j.model.table.TblFactory;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.WordprocessingML.FooterPart;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+import org.docx4j.relationships.Relationship;
+import org.docx4j.wml.FooterReference;
+import org.docx4j.wml.HdrFtrRef;
+import org.docx4j.wml.ObjectFactory;
+import org.docx4j.wml.P;
+import org.docx4j.wml.SectPr;
+import org.docx4j.wml.Tbl;
+import org.docx4j.wml.Tc;
+import org.docx4j.wml.Tr;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelPdfRendererTest {
+    private static final ObjectFactory FACTORY = new ObjectFactory();
+    private static final String WML = "xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"";
+
+    private final ReportProperties reportProperties = new ReportProperties();
+    private final FontRegistry fontRegistry = new FontRegistry(reportProperties);
+    private final ParallelPdfRenderer parallelPdfRenderer = new ParallelPdfRenderer(reportProperties, fontRegistry);
+
+    @AfterEach
+    void shutdown() {
+        parallelPdfRenderer.shutdown();
+    }
+
+    @Test
+    void breaksPagesAndNumbersThemAsTheWholeReportDoes() throws Exception {
+        reportProperties.getParallelRender().setEnabled(true);
+        reportProperties.getParallelRender().setChunkRows(40);
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+        MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+        SectPr sectPr = documentPart.getContents().getBody().getSectPr();
+        sectPr.getEGHdrFtrReferences().add(pageNumberFooter(documentPart));
+        documentPart.addStyledParagraphOfText("Heading1", "Family Members");
+        documentPart.getContent().add(table(150));
+        // a section of its own, numbered on from the first
+        P sectionEnd = documentPart.addParagraphOfText("Friends follow");
+        sectionEnd.setPPr(FACTORY.createPPr());
+        sectionEnd.getPPr().setSectPr(XmlUtils.deepCopy(sectPr));
+        documentPart.getContent().add(table(90));
+        documentPart.addParagraphOfText("End of report");
+        fontRegistry.register(wordMLPackage);
+        int bodySize = documentPart.getContent().size();
+
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        assertTrue(parallelPdfRenderer.write(wordMLPackage, parallel));
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        FOSettings settings = fontRegistry.newFoSettings();
+        settings.setOpcPackage(wordMLPackage);
+        Docx4J.toFO(settings, sequential, Docx4J.FLAG_NONE);
+
+        assertEquals(bodySize, documentPart.getContent().size());
+        try (PDDocument parallelDocument = PDDocument.load(parallel.toByteArray());
+             PDDocument sequentialDocument = PDDocument.load(sequential.toByteArray())) {
+            assertTrue(sequentialDocument.getNumberOfPages() > 4);
+            assertEquals(sequentialDocument.getNumberOfPages(), parallelDocument.getNumberOfPages());
+            PDFTextStripper stripper = new PDFTextStripper();
+            for (int page = 1; page <= sequentialDocument.getNumberOfPages(); page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                assertEquals(stripper.getText(sequentialDocument), stripper.getText(parallelDocument), "page " + page);
+            }
+        }
+    }
+
+    /**
+     * A table with a repeated header row and the given number of data rows.
+     */
+    private static Tbl table(int rows) throws Exception {
+        Tbl table = TblFactory.createTable(rows + 1, 2, 4500);
+        for (int i = 0; i <= rows; i++) {
+            Tr row = (Tr) table.getContent().get(i);
+            setText((P) ((Tc) row.getContent().get(0)).getContent().get(0), i == 0 ? "Name" : "Member " + i);
+            setText((P) ((Tc) row.getContent().get(1)).getContent().get(0), i == 0 ? "Relationship" : "Friend");
+        }
+        Tr header = (Tr) table.getContent().get(0);
+        header.setTrPr(FACTORY.createTrPr());
+        header.getTrPr().getCnfStyleOrDivIdOrGridBefore().add(FACTORY.createCTTrPrBaseTblHeader(FACTORY.createBooleanDefaultTrue()));
+        return table;
+    }
+
+    private static FooterReference pageNumberFooter(MainDocumentPart documentPart) throws Exception {
+        FooterPart footerPart = new FooterPart();
+        footerPart.setJaxbElement(FACTORY.createFtr());
+        P paragraph = FACTORY.createP();
+        setText(paragraph, "Page ");
+        paragraph.getContent().add(XmlUtils.unmarshalString(
+                "<w:fldSimple " + WML + " w:instr=\"PAGE\"><w:r><w:t>1</w:t></w:r></w:fldSimple>"));
+        footerPart.getContent().add(paragraph);
+        Relationship relationship = documentPart.addTargetPart(footerPart);
+        FooterReference reference = FACTORY.createFooterReference();
+        reference.setId(relationship.getId());
+        reference.setType(HdrFtrRef.DEFAULT);
+        return reference;
+    }
+
+    private static void setText(P paragraph, String text) throws Exception {
+        paragraph.getContent().add(XmlUtils.unmarshalString(
+                "<w:r " + WML + "><w:t xml:space=\"preserve\">" + text + "</w:t></w:r>"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.report.parser.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PayloadReaderTest {
+    private static final String[] COLUMNS = {"slNo", "name"};
+
+    private final PayloadReader payloadReader = new PayloadReader(new ObjectMapper());
+
+    @Test
+    void decodesRecordsIntoRowsInColumnOrder() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        Map<String, Object> fields = payloadReader.read(json("""
+                {"name": "Myke", "tableData": [
+                  {"name": "John Doe", "slNo": 1, "mobile": "123"},
+                  {"slNo": "2", "name": null, "extra": {"nested": true}}
+                ], "year": 2011, "address": {"city": "Anytown"}, "tags": ["a"], "email": null}
+                """), COLUMNS, rows::add);
+
+        assertEquals(Map.of("name", "Myke", "year", "2011"), fields);
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[]{"1", "John Doe"}, rows.get(0));
+        assertArrayEquals(new String[]{"2", null}, rows.get(1));
+    }
+
+    @Test
+    void skipsTableDataWithoutColumnsAndRejectsTruncatedPayloads() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        Map<String, Object> fields = payloadReader.read(json("{\"tableData\": [{\"slNo\": \"1\"}], \"name\": \"Myke\"}"), null, rows::add);
+
+        assertEquals(Map.of("name", "Myke"), fields);
+        assertTrue(rows.isEmpty());
+        assertThrows(JsonProcessingException.class,
+                () -> payloadReader.read(json("{\"tableData\": [{\"slNo\": \"1\"}"), COLUMNS, rows::add));
+        assertThrows(JsonProcessingException.class, () -> payloadReader.read(json("[]"), COLUMNS, rows::add));
+    }
+
+    private static ByteArrayInputStream json(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,125 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PdfCacheTest {
+    private static final String FIRST = "a".repeat(64);
+    private static final String SECOND = "b".repeat(64);
+    private static final String THIRD = "c".repeat(64);
+
+    @TempDir
+    Path diskDirectory;
+
+    @Test
+    void spillsTheLeastRecentlyUsedReportToDisk() throws Exception {
+        ReportProperties properties = new ReportProperties();
+        properties.getPdfCache().setMaxMemoryBytes(150);
+        properties.getPdfCache().setDiskDirectory(diskDirectory);
+        PdfCache pdfCache = new PdfCache(properties);
+        byte[] first = new byte[100];
+        first[0] = 1;
+
+        pdfCache.put(FIRST, first);
+        pdfCache.put(SECOND, new byte[100]);
+
+        assertTrue(Files.exists(diskDirectory.resolve(FIRST + ".pdf")));
+        ByteArrayOutputStream served = new ByteArrayOutputStream();
+        pdfCache.get(FIRST).orElseThrow().writeTo(served);
+        assertArrayEquals(first, served.toByteArray());
+        assertEquals(1, pdfCache.getStats().diskEntries());
+    }
+
+    @Test
+    void servesADiskHitThatIsEvictedBeforeItIsWritten() throws Exception {
+        ReportProperties properties = new ReportProperties();
+        properties.getPdfCache().setMaxMemoryBytes(150);
+        properties.getPdfCache().setMaxDiskBytes(150);
+        properties.getPdfCache().setDiskDirectory(diskDirectory);
+        PdfCache pdfCache = new PdfCache(properties);
+        byte[] first = new byte[100];
+        first[99] = 1;
+        pdfCache.put(FIRST, first);
+        pdfCache.put(SECOND, new byte[100]);
+
+        PdfCache.Entry hit = pdfCache.get(FIRST).orElseThrow();
+        // spills the second report, which pushes the first off the disk
+        pdfCache.put(THIRD, new byte[100]);
+
+        assertFalse(Files.exists(diskDirectory.resolve(FIRST + ".pdf")));
+        ByteArrayOutputStream served = new ByteArrayOutputStream();
+        hit.writeTo(served);
+        assertArrayEquals(first, served.toByteArray());
+    }
+
+    @Test
+    void putsReportsTooLargeForMemoryOnDisk() throws Exception {
+        ReportProperties properties = new ReportProperties();
+        properties.getPdfCache().setMaxMemoryBytes(50);
+        properties.getPdfCache().setDiskDirectory(diskDirectory);
+        PdfCache pdfCache = new PdfCache(properties);
+
+        pdfCache.put(FIRST, new byte[100]);
+
+        assertEquals(0, pdfCache.getStats().memoryEntries());
+        assertEquals(100, pdfCache.get(FIRST).orElseThrow().size());
+    }
+
+    @Test
+    void recordsReportsPastTheMemoryLimitOnDisk() throws Exception {
+        ReportProperties properties = new ReportProperties();
+        properties.getPdfCache().setMaxMemoryBytes(50);
+        properties.getPdfCache().setMaxDiskBytes(150);
+        properties.getPdfCache().setDiskDirectory(diskDirectory);
+        PdfCache pdfCache = new PdfCache(properties);
+        byte[] report = new byte[100];
+        report[99] = 1;
+
+        try (PdfCache.Recorder recorder = pdfCache.record(FIRST)) {
+            recorder.write(report, 0, 40);
+            recorder.write(report, 40, 60);
+            recorder.commit();
+        }
+        try (PdfCache.Recorder recorder = pdfCache.record(SECOND)) {
+            // too large for the disk too, so nothing is kept
+            recorder.write(new byte[200]);
+            recorder.commit();
+        }
+        try (PdfCache.Recorder recorder = pdfCache.record(THIRD)) {
+            // the write failed, closed without a commit
+            recorder.write(new byte[60]);
+        }
+
+        ByteArrayOutputStream served = new ByteArrayOutputStream();
+        pdfCache.get(FIRST).orElseThrow().writeTo(served);
+        assertArrayEquals(report, served.toByteArray());
+        assertTrue(pdfCache.get(SECOND).isEmpty());
+        assertTrue(pdfCache.get(THIRD).isEmpty());
+        try (var files = Files.list(diskDirectory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void dropsExpiredReports() {
+        ReportProperties properties = new ReportProperties();
+        properties.getPdfCache().setTtl(Duration.ofMillis(-1));
+        PdfCache pdfCache = new PdfCache(properties);
+
+        pdfCache.put(FIRST, new byte[10]);
+
+        assertTrue(pdfCache.get(FIRST).isEmpty());
+        assertEquals(0, pdfCache.getStats().memoryEntries());
+    }
+}
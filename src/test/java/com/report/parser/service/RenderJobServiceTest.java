@@ -0,0 +1,108 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RenderJobServiceTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private RenderJobService renderJobService;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        renderJobService.shutdown();
+    }
+
+    @Test
+    void rejectsWorkOverTheLaneCostBudget() {
+        renderJobService = new RenderJobService(properties(10, 100));
+        submit(RenderJob.Lane.BULK, 80, this::blockedWrite);
+
+        assertThrows(JobRejectedException.class, () -> submit(RenderJob.Lane.BULK, 30, this::blockedWrite));
+        // interactive work has its own lane and budget
+        submit(RenderJob.Lane.INTERACTIVE, 30, this::blockedWrite);
+    }
+
+    @Test
+    void rejectsWorkWhenTheQueueIsFull() {
+        renderJobService = new RenderJobService(properties(1, 1_000));
+        submit(RenderJob.Lane.BULK, 1, this::blockedWrite);
+        submit(RenderJob.Lane.BULK, 1, this::blockedWrite);
+
+        assertThrows(JobRejectedException.class, () -> submit(RenderJob.Lane.BULK, 1, this::blockedWrite));
+    }
+
+    @Test
+    void keepsTheResultOfFinishedJobs() throws Exception {
+        renderJobService = new RenderJobService(properties(10, 100));
+        RenderJob job = submit(RenderJob.Lane.INTERACTIVE, 1, outputStream -> outputStream.write(1));
+
+        awaitFinished(job);
+        assertEquals(RenderJob.State.DONE, job.getState());
+        assertTrue(renderJobService.get(job.getId()).isPresent());
+        try (InputStream content = job.getResult().openStream()) {
+            assertArrayEquals(new byte[]{1}, content.readAllBytes());
+        }
+    }
+
+    @Test
+    void countsHeldResultsAgainstTheLaneBudgetUntilTheyExpire() throws Exception {
+        ReportProperties reportProperties = properties(10, 2);
+        reportProperties.getJobs().setResultTtl(Duration.ZERO);
+        renderJobService = new RenderJobService(reportProperties);
+        // three kilobytes held, over the budget of two
+        awaitFinished(submit(RenderJob.Lane.BULK, 1, outputStream -> outputStream.write(new byte[3 * 1024])));
+
+        assertThrows(JobRejectedException.class, () -> submit(RenderJob.Lane.BULK, 1, this::blockedWrite));
+        TimeUnit.MILLISECONDS.sleep(5);
+        renderJobService.purgeExpired();
+        submit(RenderJob.Lane.BULK, 1, this::blockedWrite);
+    }
+
+    @Test
+    void hidesTheCauseOfFailedJobs() throws Exception {
+        renderJobService = new RenderJobService(properties(10, 100));
+        RenderJob job = submit(RenderJob.Lane.BULK, 1, outputStream -> {
+            throw new IllegalStateException("/internal/path/template.docx is corrupt");
+        });
+
+        awaitFinished(job);
+        assertEquals(RenderJob.State.FAILED, job.getState());
+        assertEquals("Render failed", job.getError());
+    }
+
+    private RenderJob submit(RenderJob.Lane lane, long cost, RenderJob.Task task) {
+        return renderJobService.submit(lane, cost, "application/pdf", "report.pdf", task);
+    }
+
+    private static void awaitFinished(RenderJob job) throws InterruptedException {
+        for (int i = 0; i < 100 && job.getFinishedAt() == null; i++) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private void blockedWrite(OutputStream outputStream) throws InterruptedException {
+        release.await();
+    }
+
+    private static ReportProperties properties(int queueCapacity, long maxPendingCost) {
+        ReportProperties reportProperties = new ReportProperties();
+        ReportProperties.Lane bulk = reportProperties.getJobs().getBulk();
+        bulk.setWorkers(1);
+        bulk.setQueueCapacity(queueCapacity);
+        bulk.setMaxPendingCost(maxPendingCost);
+        return reportProperties;
+    }
+}
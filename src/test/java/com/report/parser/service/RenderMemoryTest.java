@@ -0,0 +1,69 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RenderMemoryTest {
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Test
+    void queuesExportsUntilTheirMemoryIsReturned() throws Exception {
+        RenderMemory renderMemory = renderMemory(Duration.ofSeconds(30));
+        RenderMemory.Reservation first = renderMemory.reserve(6 * MEGABYTE);
+
+        CompletableFuture<RenderMemory.Reservation> second = CompletableFuture.supplyAsync(() -> reserve(renderMemory, 6 * MEGABYTE));
+        Thread.sleep(200);
+        assertFalse(second.isDone());
+
+        first.close();
+        second.get(10, TimeUnit.SECONDS).close();
+        assertEquals(0, renderMemory.getReservedBytes());
+    }
+
+    @Test
+    void turnsExportsAwayWhenTheWaitRunsOut() throws Exception {
+        RenderMemory renderMemory = renderMemory(Duration.ofMillis(50));
+        // larger than the whole budget, so it runs alone
+        try (RenderMemory.Reservation ignored = renderMemory.reserve(100 * MEGABYTE)) {
+            assertEquals(renderMemory.getBudgetBytes(), renderMemory.getReservedBytes());
+            assertThrows(JobRejectedException.class, () -> renderMemory.reserve(MEGABYTE));
+        }
+        assertEquals(0, renderMemory.getReservedBytes());
+    }
+
+    @Test
+    void keepsPartOfAReservationPastItsExport() throws Exception {
+        RenderMemory renderMemory = renderMemory(Duration.ofSeconds(30));
+        RenderMemory.Reservation kept;
+        try (RenderMemory.Reservation reservation = renderMemory.reserve(4 * MEGABYTE)) {
+            kept = reservation.keep(MEGABYTE);
+        }
+        assertEquals(MEGABYTE, renderMemory.getReservedBytes());
+
+        kept.close();
+        assertEquals(0, renderMemory.getReservedBytes());
+    }
+
+    private static RenderMemory renderMemory(Duration maxWait) {
+        ReportProperties reportProperties = new ReportProperties();
+        reportProperties.getMemory().setMaxBytes(10 * MEGABYTE);
+        reportProperties.getMemory().setMaxWait(maxWait);
+        return new RenderMemory(reportProperties);
+    }
+
+    private static RenderMemory.Reservation reserve(RenderMemory renderMemory, long bytes) {
+        try {
+            return renderMemory.reserve(bytes);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
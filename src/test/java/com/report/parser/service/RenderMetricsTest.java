@@ -0,0 +1,42 @@
+package com.report.parser.service;
+
+import com.report.parser.config.ReportProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RenderMetricsTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RenderMetrics renderMetrics = new RenderMetrics(meterRegistry, new ReportProperties());
+
+    @Test
+    void recordsStagesAcrossPrepareAndExport() {
+        RenderTrace trace = renderMetrics.start("profile");
+        trace.stage("text");
+        trace.stage("table");
+        trace.addRows(3);
+        trace.end();
+
+        trace.stage("export");
+        trace.addBytes(100);
+        renderMetrics.finish(trace);
+
+        assertEquals(1, meterRegistry.get("report.render.stage").tags("template", "profile", "stage", "export").timer().count());
+        assertEquals(1, meterRegistry.get("report.render").timer().count());
+        assertEquals(3, meterRegistry.get("report.render.rows").counter().count());
+        assertEquals(100, meterRegistry.get("report.render.bytes").summary().totalAmount());
+    }
+
+    @Test
+    void countsFailuresByStageAndCause() {
+        RenderTrace trace = renderMetrics.start("profile");
+        trace.stage("images");
+        renderMetrics.failed(trace, new IllegalStateException("broken"));
+
+        assertEquals(1, meterRegistry.get("report.render.failures")
+                .tags("template", "profile", "stage", "images", "cause", "IllegalStateException").counter().count());
+        assertEquals(0, meterRegistry.find("report.render").timers().stream()
+                .filter(timer -> timer.getId().getName().equals("report.render")).count());
+    }
+}
@@ -0,0 +1,144 @@
+package com.report.parser.service;
+
+import org.docx4j.TextUtils;
+import org.docx4j.jaxb.Context;
+import org.docx4j.wml.BooleanDefaultTrue;
+import org.docx4j.wml.ObjectFactory;
+import org.docx4j.wml.P;
+import org.docx4j.wml.R;
+import org.docx4j.wml.Tbl;
+import org.docx4j.wml.TblWidth;
+import org.docx4j.wml.Tc;
+import org.docx4j.wml.TcPr;
+import org.docx4j.wml.Text;
+import org.docx4j.wml.Tr;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TableWriterTest {
+    private final ObjectFactory factory = Context.getWmlObjectFactory();
+
+    @Test
+    void replacesTemplateRowWithStyledDataRows() {
+        TcPr templateCellProperties = factory.createTcPr();
+        templateCellProperties.setTcW(width(2000));
+        Tbl table = factory.createTbl();
+        table.getContent().add(row(null, "S/N", "Name"));
+        Tr templateRow = row(templateCellProperties, "", "");
+        // an empty template cell carries its formatting on the paragraph mark
+        P templateParagraph = (P) ((Tc) templateRow.getContent().get(0)).getContent().get(0);
+        templateParagraph.setPPr(factory.createPPr());
+        templateParagraph.getPPr().setRPr(factory.createParaRPr());
+        templateParagraph.getPPr().getRPr().setB(new BooleanDefaultTrue());
+        table.getContent().add(templateRow);
+        table.getContent().add(row(null, "Total", ""));
+
+        TableWriter tableWriter = new TableWriter(table, columns());
+        int written = tableWriter.write(tableWriter.valuesOf(List.of(
+                Map.of("slNo", "1", "name", "John Doe"),
+                Map.of("slNo", 2, "name", "Jane Smith")).iterator()));
+
+        assertEquals(2, written);
+        assertEquals(4, table.getContent().size());
+        assertEquals("1John Doe", TextUtils.getText(table.getContent().get(1)));
+        assertEquals("2Jane Smith", TextUtils.getText(table.getContent().get(2)));
+        assertEquals("Total", TextUtils.getText(table.getContent().get(3)));
+        Tc firstCell = (Tc) ((Tr) table.getContent().get(1)).getContent().get(0);
+        // copied, so the data rows don't take the template row's own properties
+        assertNotSame(templateCellProperties, firstCell.getTcPr());
+        assertEquals(BigInteger.valueOf(2000), firstCell.getTcPr().getTcW().getW());
+        R firstRun = (R) ((P) firstCell.getContent().get(0)).getContent().get(0);
+        assertTrue(firstRun.getRPr().getB().isVal());
+    }
+
+    @Test
+    void keepsTemplateRowWithoutRecords() {
+        Tbl table = factory.createTbl();
+        table.getContent().add(row(null, "S/N", "Name"));
+        table.getContent().add(row(null, "", ""));
+
+        TableWriter tableWriter = new TableWriter(table, columns());
+
+        assertEquals(0, tableWriter.write(tableWriter.valuesOf(List.<Map<String, String>>of().iterator())));
+        assertEquals(2, table.getContent().size());
+    }
+
+    @Test
+    void resetRestoresTemplateRowForTheNextRows() {
+        Tbl table = factory.createTbl();
+        table.getContent().add(row(null, "S/N", "Name"));
+        Tr templateRow = row(null, "", "");
+        table.getContent().add(templateRow);
+        table.getContent().add(row(null, "Total", ""));
+
+        TableWriter tableWriter = new TableWriter(table, columns());
+        tableWriter.reset(tableWriter.write(tableWriter.valuesOf(List.of(
+                Map.of("slNo", "1", "name", "John Doe"),
+                Map.of("slNo", "2", "name", "Jane Smith")).iterator())));
+
+        assertEquals(3, table.getContent().size());
+        assertSame(templateRow, table.getContent().get(1));
+        assertEquals(1, tableWriter.write(tableWriter.valuesOf(List.of(Map.of("slNo", "3", "name", "Max Mustermann")).iterator())));
+        assertEquals("3Max Mustermann", TextUtils.getText(table.getContent().get(1)));
+        assertEquals("Total", TextUtils.getText(table.getContent().get(2)));
+    }
+
+    @Test
+    void formatsRowsBuiltBeforeTheirTableIsKnown() {
+        TcPr templateCellProperties = factory.createTcPr();
+        templateCellProperties.setTcW(width(2000));
+        Tbl table = factory.createTbl();
+        table.getContent().add(row(null, "S/N", "Name"));
+        table.getContent().add(row(templateCellProperties, "", ""));
+        Tr row = TableWriter.createRow(new String[]{"1", "John Doe"}, 2);
+
+        TableWriter tableWriter = new TableWriter(table, columns());
+        assertEquals(1, tableWriter.insert(List.of(tableWriter.format(row))));
+
+        assertEquals("1John Doe", TextUtils.getText(table.getContent().get(1)));
+        Tc firstCell = (Tc) row.getContent().get(0);
+        assertEquals(BigInteger.valueOf(2000), firstCell.getTcPr().getTcW().getW());
+    }
+
+    private TblWidth width(int twips) {
+        TblWidth width = factory.createTblWidth();
+        width.setW(BigInteger.valueOf(twips));
+        width.setType("dxa");
+        return width;
+    }
+
+    private LinkedHashMap<String, String> columns() {
+        LinkedHashMap<String, String> columnMap = new LinkedHashMap<>();
+        columnMap.put("slNo", "S/N");
+        columnMap.put("name", "Name");
+        return columnMap;
+    }
+
+    private Tr row(TcPr cellProperties, String... values) {
+        Tr row = factory.createTr();
+        for (String value : values) {
+            P paragraph = factory.createP();
+            if (!value.isEmpty()) {
+                Text text = factory.createText();
+                text.setValue(value);
+                R run = factory.createR();
+                run.getContent().add(text);
+                paragraph.getContent().add(run);
+            }
+            Tc cell = factory.createTc();
+            cell.setTcPr(cellProperties);
+            cell.getContent().add(paragraph);
+            row.getContent().add(cell);
+        }
+        return row;
+    }
+}
@@ -0,0 +1,131 @@
+package com.report.parser.service;
+
+import org.docx4j.TextUtils;
+import org.docx4j.jaxb.Context;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.WordprocessingML.HeaderPart;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+import org.docx4j.wml.Hdr;
+import org.docx4j.wml.Jc;
+import org.docx4j.wml.JcEnumeration;
+import org.docx4j.wml.ObjectFactory;
+import org.docx4j.wml.P;
+import org.docx4j.wml.PPr;
+import org.docx4j.wml.R;
+import org.docx4j.wml.Tbl;
+import org.docx4j.wml.Tc;
+import org.docx4j.wml.Text;
+import org.docx4j.wml.Tr;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TemplateIndexTest {
+    private final ObjectFactory factory = Context.getWmlObjectFactory();
+
+    @Test
+    void fillsTokensSplitAcrossRuns() throws Exception {
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+        MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+        P paragraph = paragraph("Name: ${na", "me}, ", "${email}");
+        documentPart.getContent().add(paragraph);
+
+        TemplateIndex.build(wordMLPackage).fillText(wordMLPackage, Map.of("name", "Myke Tyson", "email", "abc.123@gmail.com"));
+
+        assertEquals("Name: Myke Tyson, abc.123@gmail.com", TextUtils.getText(paragraph));
+    }
+
+    @Test
+    void fillsTokensInsideTableCells() throws Exception {
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+        MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+        P cellParagraph = paragraph("${", "mobile", "}");
+        Tc cell = factory.createTc();
+        cell.getContent().add(cellParagraph);
+        documentPart.getContent().add(factory.createP());
+        documentPart.getContent().add(factory.createBodyTbl(table(cell)));
+
+        TemplateIndex.build(wordMLPackage).fillText(wordMLPackage, Map.of("mobile", "9876543210"));
+
+        assertEquals("9876543210", TextUtils.getText(cellParagraph));
+    }
+
+    @Test
+    void reducesUnmappedTokensToTheBareKey() throws Exception {
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+        MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+        P paragraph = paragraph("${profilePhoto}");
+        documentPart.getContent().add(paragraph);
+
+        TemplateIndex.build(wordMLPackage).fillText(wordMLPackage, Map.of());
+
+        assertEquals("profilePhoto", TextUtils.getText(paragraph));
+    }
+
+    @Test
+    void indexesHeadersAndNestedTables() throws Exception {
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+        MainDocumentPart documentPart = wordMLPackage.getMainDocumentPart();
+        P headerParagraph = paragraph("${name}");
+        Hdr header = factory.createHdr();
+        header.getContent().add(headerParagraph);
+        HeaderPart headerPart = new HeaderPart();
+        headerPart.setJaxbElement(header);
+        documentPart.addTargetPart(headerPart);
+
+        Tc innerCell = factory.createTc();
+        innerCell.getContent().add(paragraph("${profilePhoto}"));
+        Tc outerCell = factory.createTc();
+        outerCell.getContent().add(factory.createTcTbl(table(innerCell)));
+        documentPart.getContent().add(factory.createBodyTbl(table(outerCell)));
+
+        TemplateIndex templateIndex = TemplateIndex.build(wordMLPackage);
+        templateIndex.fillText(wordMLPackage, Map.of("name", "Myke Tyson"));
+
+        assertEquals(Set.of("${name}", "${profilePhoto}"), templateIndex.getPlaceholderKeys());
+        assertEquals("Myke Tyson", TextUtils.getText(headerParagraph));
+        assertEquals(2, templateIndex.getTables().size());
+        TemplateIndex.Location anchor = templateIndex.getImageAnchors("profilePhoto").get(0);
+        assertSame(innerCell, TemplateIndex.getParent(wordMLPackage, anchor));
+    }
+
+    @Test
+    void pinsJustifiedBodyParagraphsToTheLeft() throws Exception {
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+        P paragraph = paragraph("About me");
+        PPr ppr = factory.createPPr();
+        Jc jc = factory.createJc();
+        jc.setVal(JcEnumeration.BOTH);
+        ppr.setJc(jc);
+        paragraph.setPPr(ppr);
+        wordMLPackage.getMainDocumentPart().getContent().add(paragraph);
+
+        TemplateIndex.build(wordMLPackage);
+
+        assertEquals(JcEnumeration.LEFT, paragraph.getPPr().getJc().getVal());
+    }
+
+    private Tbl table(Tc cell) {
+        Tr row = factory.createTr();
+        row.getContent().add(factory.createTrTc(cell));
+        Tbl table = factory.createTbl();
+        table.getContent().add(row);
+        return table;
+    }
+
+    private P paragraph(String... runTexts) {
+        P paragraph = factory.createP();
+        for (String runText : runTexts) {
+            Text text = factory.createText();
+            text.setValue(runText);
+            R run = factory.createR();
+            run.getContent().add(factory.createRT(text));
+            paragraph.getContent().add(run);
+        }
+        return paragraph;
+    }
+}
@@ -0,0 +1,97 @@
+package com.report.parser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.report.parser.config.ReportProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TemplateRegistryTest {
+    @TempDir
+    Path directory;
+
+    private TemplateRegistry templateRegistry;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        templateRegistry.close();
+    }
+
+    @Test
+    void compilesTemplatesWithDescriptorsAndReloadsChanges() throws Exception {
+        writeTemplate("letter", "${greeting}");
+        Files.writeString(directory.resolve("letter.json"), "{\"columns\": {\"slNo\": \"S/N\", \"name\": \"Name\"}}");
+        writeTemplate("~$letter", "${lock}");
+        templateRegistry = registry();
+        templateRegistry.load();
+
+        ReportTemplate letter = templateRegistry.get("letter");
+        assertEquals(1, templateRegistry.getSummaries().size());
+        assertArrayEquals(new String[]{"slNo", "name"}, letter.getColumns().keySet().toArray());
+        assertTrue(letter.getCompiledTemplate().getTemplateIndex().getPlaceholderKeys().contains("${greeting}"));
+        assertThrows(UnknownTemplateException.class, () -> templateRegistry.get("missing"));
+
+        writeTemplate("letter", "${salutation}");
+        ReportTemplate reloaded = awaitChange("letter", letter);
+        assertNotEquals(letter.getChecksum(), reloaded.getChecksum());
+        assertTrue(reloaded.getCompiledTemplate().getTemplateIndex().getPlaceholderKeys().contains("${salutation}"));
+    }
+
+    @Test
+    void keepsThePreviousVersionWhenATemplateBreaks() throws Exception {
+        writeTemplate("letter", "${greeting}");
+        templateRegistry = registry();
+        templateRegistry.load();
+        ReportTemplate letter = templateRegistry.get("letter");
+
+        Files.writeString(directory.resolve("letter.docx"), "not a docx");
+        writeTemplate("memo", "${subject}");
+        awaitChange("memo", null);
+
+        assertEquals(letter, templateRegistry.get("letter"));
+    }
+
+    private TemplateRegistry registry() {
+        ReportProperties reportProperties = new ReportProperties();
+        reportProperties.getTemplates().setDirectory(directory);
+        reportProperties.getTemplates().setReloadDelay(Duration.ofMillis(100));
+        TemplateCompiler templateCompiler = new TemplateCompiler(
+                new RenderMetrics(new SimpleMeterRegistry(), reportProperties), new FontRegistry(reportProperties),
+                new DirectPdfRenderer(reportProperties));
+        return new TemplateRegistry(reportProperties, templateCompiler, new ObjectMapper());
+    }
+
+    private void writeTemplate(String id, String text) throws Exception {
+        WordprocessingMLPackage wordMLPackage = WordprocessingMLPackage.createPackage();
+        wordMLPackage.getMainDocumentPart().addParagraphOfText(text);
+        wordMLPackage.save(directory.resolve(id + ".docx").toFile());
+    }
+
+    private ReportTemplate awaitChange(String id, ReportTemplate previous) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                ReportTemplate template = templateRegistry.get(id);
+                if (template != previous) {
+                    return template;
+                }
+            } catch (UnknownTemplateException e) {
+                // not compiled yet
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Template " + id + " was not reloaded");
+    }
+}